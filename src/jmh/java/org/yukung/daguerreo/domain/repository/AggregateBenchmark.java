@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.yukung.daguerreo.domain.entity.Book;
+import org.yukung.daguerreo.domain.entity.BookApi;
+import org.yukung.daguerreo.domain.entity.BookCover;
+import org.yukung.daguerreo.domain.entity.Isbn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmark of loading a page of books with their book APIs, ISBNs and covers.
+ * <p>
+ * {@code join} loads them by {@link BookRepository#findAllWithAssociations(Pageable)},
+ * {@code perTable} loads a page of books and then the associations by a query per table,
+ * and {@code perRow} looks up the associations of every book one by one.
+ * </p>
+ *
+ * @author yukung
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dspring.devtools.restart.enabled=false")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AggregateBenchmark {
+
+    /**
+     * The number of rows in {@code book}.
+     */
+    static final int ROWS = 10_000;
+
+    @Param({"20", "100"})
+    private int pageSize;
+
+    @Param({"join", "perTable", "perRow"})
+    private String mode;
+
+    private ConfigurableApplicationContext context;
+    private BookRepository books;
+    private BookApiRepository bookApis;
+    private IsbnRepository isbns;
+    private BookCoverRepository bookCovers;
+    private Sort sort;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("aggregate");
+        books = context.getBean(BookRepository.class);
+        bookApis = context.getBean(BookApiRepository.class);
+        isbns = context.getBean(IsbnRepository.class);
+        bookCovers = context.getBean(BookCoverRepository.class);
+        BenchmarkApplication.seedBooks(context, ROWS);
+        sort = new Sort(Sort.Direction.ASC, "id");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Book> load() {
+        Pageable pageable = new PageRequest(ThreadLocalRandom.current().nextInt(ROWS / pageSize), pageSize, sort);
+        switch (mode) {
+            case "join":
+                return books.findAllWithAssociations(pageable).getContent();
+            case "perTable":
+                return loadPerTable(pageable);
+            default:
+                return loadPerRow(pageable);
+        }
+    }
+
+    private List<Book> loadPerTable(Pageable pageable) {
+        List<Book> page = books.findAll(pageable).getContent();
+        List<Long> ids = page.stream().map(Book::getId).collect(Collectors.toList());
+        Set<Integer> bookApiIds = page.stream()
+            .map(Book::getBookApiId)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<Integer, BookApi> apis = index(bookApis.findAll(new ArrayList<>(bookApiIds)), BookApi::getId);
+        Map<Long, Isbn> isbnsById = index(isbns.findAll(ids), Isbn::getBookId);
+        Map<Long, BookCover> coversById = index(bookCovers.findAll(ids), BookCover::getBookId);
+        page.forEach(book -> {
+            book.setBookApi(apis.get(book.getBookApiId()));
+            book.setIsbn(isbnsById.get(book.getId()));
+            book.setBookCover(coversById.get(book.getId()));
+        });
+        return page;
+    }
+
+    private List<Book> loadPerRow(Pageable pageable) {
+        List<Book> page = books.findAll(pageable).getContent();
+        page.forEach(book -> {
+            book.setBookApi(bookApis.findOne(book.getBookApiId()));
+            book.setIsbn(isbns.findOne(book.getId()));
+            book.setBookCover(bookCovers.findOne(book.getId()));
+        });
+        return page;
+    }
+
+    private static <K, V> Map<K, V> index(List<V> values, Function<V, K> key) {
+        Map<K, V> index = new HashMap<>(values.size() * 2);
+        values.forEach(value -> index.put(key.apply(value), value));
+        return index;
+    }
+}
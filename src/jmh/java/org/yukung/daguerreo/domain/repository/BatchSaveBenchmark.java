@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.yukung.daguerreo.domain.entity.BookApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmark of {@link BasicJooqRepository#save(Iterable)} against saving the entities one by one.
+ * <p>
+ * Half of the entities update the existing rows and the other half are inserted with generated IDs.
+ * The {@code rows} counter is reported as the number of saved rows per second.
+ * </p>
+ *
+ * @author yukung
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, jvmArgsAppend = "-Dspring.devtools.restart.enabled=false")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BatchSaveBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int size;
+
+    @Param({"loop", "batch"})
+    private String mode;
+
+    private ConfigurableApplicationContext context;
+    private BookApiBenchmarkRepository repository;
+    private List<BookApi> existing;
+    private List<BookApi> entities;
+    private long invocation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("batch-save");
+        repository = context.getBean(BookApiBenchmarkRepository.class);
+        existing = BenchmarkApplication.seedBookApis(repository, size / 2);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareEntities() {
+        entities = new ArrayList<>(size);
+        // The name differs on every invocation, otherwise the unchanged rows are not updated at all.
+        String suffix = "-" + invocation++;
+        existing.forEach(bookApi ->
+            entities.add(new BookApi(bookApi.getId(), bookApi.getName() + suffix, bookApi.getUrl())));
+        for (int i = entities.size(); i < size; i++) {
+            entities.add(new BookApi(null, "new-api-" + i, "http://example.com/new/" + i));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteInserted() {
+        repository.delete(entities.stream()
+            .skip(existing.size())
+            .collect(Collectors.toList()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void save(Rows rows) {
+        if ("batch".equals(mode)) {
+            repository.save(entities);
+        } else {
+            entities.forEach(repository::save);
+        }
+        rows.rows += size;
+    }
+
+    /**
+     * Counts the saved rows so that JMH reports them per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Rows {
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.yukung.daguerreo.Application;
+import org.yukung.daguerreo.domain.entity.Book;
+import org.yukung.daguerreo.domain.entity.BookApi;
+import org.yukung.daguerreo.domain.entity.BookCover;
+import org.yukung.daguerreo.domain.entity.Isbn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Starts the application against an in-memory H2 database for the benchmarks.
+ * <p>
+ * The schema is created by the Flyway migrations on startup, in the same way as the file database.
+ * </p>
+ *
+ * @author yukung
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * Starts the application with the in-memory database of the given name.
+     * <p>
+     * The database and the logging are given as the command line arguments, so that they override
+     * {@code application.properties} and the profiles. The statement cache of H2 is enabled as in them, and the
+     * {@code perf} profile also enables the other H2 options of it.
+     * </p>
+     *
+     * @param database the name of the database which is isolated from the other benchmarks
+     * @param profiles the profiles to be activated, e.g. {@code perf}
+     * @return the application context
+     */
+    static ConfigurableApplicationContext start(String database, String... profiles) {
+        String options = Arrays.asList(profiles).contains("perf")
+            ? ";MULTI_THREADED=TRUE;QUERY_CACHE_SIZE=64" : ";QUERY_CACHE_SIZE=32";
+        return new SpringApplicationBuilder(Application.class)
+            .web(false)
+            .profiles(profiles)
+            .run(
+                "--spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=false"
+                    + options,
+                "--logging.level.org.jooq=WARN");
+    }
+
+    /**
+     * Inserts the given number of rows into {@code book_api}.
+     *
+     * @param repository the repository of {@code book_api}
+     * @param rows       the number of rows
+     * @return the inserted entities which have the generated IDs
+     */
+    static List<BookApi> seedBookApis(BookApiBenchmarkRepository repository, int rows) {
+        List<BookApi> seeds = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            seeds.add(new BookApi(null, "api-" + i, "http://example.com/api/" + i));
+        }
+        List<BookApi> inserted = new ArrayList<>(rows);
+        repository.save(seeds).forEach(inserted::add);
+        return inserted;
+    }
+
+    /**
+     * Inserts the given number of rows into {@code book} with 10 book APIs.
+     * <p>
+     * Every book has an ISBN and every other book has a cover.
+     * </p>
+     *
+     * @param context the application context
+     * @param rows    the number of rows
+     */
+    static void seedBooks(ConfigurableApplicationContext context, int rows) {
+        List<BookApi> bookApis = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            bookApis.add(new BookApi(null, "api-" + i, "http://example.com/api/" + i));
+        }
+        context.getBean(BookApiRepository.class).save(bookApis);
+        List<Book> books = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            books.add(new Book(null, bookApis.get(i % bookApis.size()).getId(), "item-" + i, "title-" + i,
+                "author-" + i, "publisher-" + i, 100 + i % 500, 1000 + i % 3000, null));
+        }
+        context.getBean(BookRepository.class).save(books);
+        List<Isbn> isbns = new ArrayList<>(rows);
+        List<BookCover> covers = new ArrayList<>(rows / 2);
+        for (int i = 0; i < rows; i++) {
+            Long id = books.get(i).getId();
+            isbns.add(new Isbn(id, String.format("978%010d", i)));
+            if (i % 2 == 0) {
+                covers.add(new BookCover(id, "http://example.com/covers/" + id + ".jpg"));
+            }
+        }
+        context.getBean(IsbnRepository.class).save(isbns);
+        context.getBean(BookCoverRepository.class).save(covers);
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.springframework.stereotype.Repository;
+import org.yukung.daguerreo.domain.entity.BookApi;
+import org.yukung.daguerreo.infrastructure.tables.records.BookApiRecord;
+
+/**
+ * Repository of {@code book_api} which is measured by the benchmarks.
+ *
+ * @author yukung
+ */
+@Repository
+public class BookApiBenchmarkRepository
+    extends BasicJooqRepository<BookApiRecord, org.yukung.daguerreo.infrastructure.tables.BookApi, BookApi, Integer> {
+}
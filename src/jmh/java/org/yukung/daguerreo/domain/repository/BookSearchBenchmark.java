@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.yukung.daguerreo.domain.entity.Book;
+import org.yukung.daguerreo.domain.entity.BookApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link BookSearchRepository#search(String, org.springframework.data.domain.Pageable)} over a million
+ * books.
+ * <p>
+ * The titles, authors and publishers are drawn from small vocabularies, so that the common terms have hundreds of
+ * thousands of postings. The index is rebuilt once after the seeding, as on startup.
+ * </p>
+ *
+ * @author yukung
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dspring.devtools.restart.enabled=false"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BookSearchBenchmark {
+
+    /**
+     * The number of rows in {@code book}.
+     */
+    static final int ROWS = 1_000_000;
+
+    private static final int CHUNK_SIZE = 10_000;
+    private static final String[] WORDS = {"Java", "Spring", "jOOQ", "SQL", "Performance", "Design", "Patterns",
+        "Testing", "Kotlin", "Scala", "入門", "徹底", "実践", "設計", "本格", "パフォーマンス", "データベース", "プログラミング"};
+    private static final String[] AUTHORS = {"谷本 心", "Scott Oaks", "山田 太郎", "Joshua Bloch", "佐藤 花子",
+        "Martin Fowler"};
+    private static final String[] PUBLISHERS = {"技術評論社", "翔泳社", "オライリージャパン", "丸善出版", "インプレス"};
+
+    @Param({"java", "java 入門", "spr", "パフォーマンス 設計"})
+    private String query;
+
+    private ConfigurableApplicationContext context;
+    private BookSearchRepository searchRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("book-search");
+        seed(context);
+        searchRepository = context.getBean(BookSearchRepository.class);
+        searchRepository.rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Book> search() {
+        return searchRepository.search(query, new PageRequest(0, 20));
+    }
+
+    private static void seed(ConfigurableApplicationContext context) {
+        List<BookApi> bookApis = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            bookApis.add(new BookApi(null, "api-" + i, "http://example.com/api/" + i));
+        }
+        context.getBean(BookApiRepository.class).save(bookApis);
+        BookRepository books = context.getBean(BookRepository.class);
+        Random random = new Random(0);
+        for (int start = 0; start < ROWS; start += CHUNK_SIZE) {
+            List<Book> chunk = new ArrayList<>(CHUNK_SIZE);
+            for (int i = start; i < start + CHUNK_SIZE; i++) {
+                String title = pick(random, WORDS) + " " + pick(random, WORDS) + " " + pick(random, WORDS);
+                chunk.add(new Book(null, bookApis.get(i % bookApis.size()).getId(), "item-" + i, title,
+                    pick(random, AUTHORS), pick(random, PUBLISHERS), 100 + i % 500, 1000 + i % 3000, null));
+            }
+            books.save(chunk);
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static org.yukung.daguerreo.infrastructure.Tables.*;
+
+import org.jooq.DSLContext;
+import org.jooq.ResultQuery;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.yukung.daguerreo.domain.entity.BookApi;
+import org.yukung.daguerreo.infrastructure.tables.records.BookApiRecord;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the fixed-shape queries which are built once by {@link FixedShapeQueries},
+ * against building the same queries by the DSL on every call.
+ * <p>
+ * Both sides run the same SQL on the same {@link DSLContext} and return the same records without mapping them to
+ * the entities, so the difference is only the cost of building, binding and rendering the queries. The repository
+ * is not involved, so neither the metrics nor the cache nor the read routing is measured. {@code delete} deletes
+ * a key which does not exist, so that the table stays the same on every invocation.
+ * </p>
+ * <p>
+ * The {@code render*} benchmarks measure only the cost of rendering the SQL without executing it, which jOOQ does
+ * on every execution of either side. Compare the allocation rate of the GC profiler, i.e. {@code gc.alloc.rate.norm}
+ * of {@code gradle jmh -Pjmh.includes=FixedShapeQueryBenchmark}, as well as the time.
+ * </p>
+ *
+ * @author yukung
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dspring.devtools.restart.enabled=false")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FixedShapeQueryBenchmark {
+
+    /**
+     * The number of rows in {@code book_api}.
+     */
+    static final int ROWS = 10_000;
+
+    private ConfigurableApplicationContext context;
+    private DSLContext dsl;
+    private FixedShapeQueries<BookApiRecord> queries;
+    private List<BookApi> seeds;
+
+    /**
+     * The query of {@code findOne} which is built once, to measure the render alone.
+     */
+    private ResultQuery<BookApiRecord> findOne;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("fixed-shape");
+        dsl = context.getBean(DSLContext.class);
+        queries = new FixedShapeQueries<>(dsl, BOOK_API, BOOK_API.getPrimaryKey().getFieldsArray());
+        seeds = BenchmarkApplication.seedBookApis(context.getBean(BookApiBenchmarkRepository.class), ROWS);
+        findOne = dsl.selectFrom(BOOK_API).where(BOOK_API.ID.equal(DSL.param("id", Integer.class)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BookApiRecord findOneFixed() {
+        return queries.findOne(new Object[] {randomId()});
+    }
+
+    @Benchmark
+    public BookApiRecord findOneDsl() {
+        return dsl.selectFrom(BOOK_API).where(BOOK_API.ID.equal(randomId())).fetchOne();
+    }
+
+    @Benchmark
+    public boolean existsFixed() {
+        return queries.exists(new Object[] {randomId()});
+    }
+
+    @Benchmark
+    public boolean existsDsl() {
+        return dsl.selectOne().from(BOOK_API).where(BOOK_API.ID.equal(randomId())).fetchOne() != null;
+    }
+
+    @Benchmark
+    public int deleteFixed() {
+        return queries.delete(new Object[] {missingId()});
+    }
+
+    @Benchmark
+    public int deleteDsl() {
+        return dsl.deleteFrom(BOOK_API).where(BOOK_API.ID.equal(missingId())).execute();
+    }
+
+    @Benchmark
+    public long countFixed() {
+        return queries.count();
+    }
+
+    @Benchmark
+    public long countDsl() {
+        return dsl.selectCount().from(BOOK_API).fetchOne(0, Long.class);
+    }
+
+    @Benchmark
+    public String renderFixed() {
+        findOne.bind(1, randomId());
+        return dsl.render(findOne);
+    }
+
+    @Benchmark
+    public String renderDsl() {
+        return dsl.render(dsl.selectFrom(BOOK_API).where(BOOK_API.ID.equal(DSL.param("id", randomId()))));
+    }
+
+    private Integer randomId() {
+        return seeds.get(ThreadLocalRandom.current().nextInt(seeds.size())).getId();
+    }
+
+    private Integer missingId() {
+        return -randomId();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.yukung.daguerreo.domain.entity.BookApi;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the repository through the connection pool by 1 to 64 concurrent clients.
+ * <p>
+ * Each client mixes the lookups by ID with the page queries. Run by {@code ./gradlew jmhPoolScaling}, which runs
+ * the benchmarks once per number of clients with the {@code perf} profile and writes the throughput of each run
+ * into {@code build/reports/jmh/pool-scaling-<clients>.json}. The wait time of the pool is exposed at
+ * {@code /repositories} under {@code pool} when the application is running.
+ * </p>
+ *
+ * @author yukung
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dspring.devtools.restart.enabled=false")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PoolScalingBenchmark {
+
+    /**
+     * The numbers of the concurrent clients.
+     */
+    static final int[] CLIENTS = {1, 2, 4, 8, 16, 32, 64};
+
+    /**
+     * The number of rows in {@code book_api}.
+     */
+    static final int ROWS = 10_000;
+
+    private ConfigurableApplicationContext context;
+    private BookApiBenchmarkRepository repository;
+    private List<BookApi> seeds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("pool-scaling", "perf");
+        repository = context.getBean(BookApiBenchmarkRepository.class);
+        seeds = BenchmarkApplication.seedBookApis(repository, ROWS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BookApi findOne() {
+        return repository.findOne(seeds.get(ThreadLocalRandom.current().nextInt(seeds.size())).getId());
+    }
+
+    @Benchmark
+    public List<BookApi> findPage() {
+        int page = ThreadLocalRandom.current().nextInt(ROWS / 20);
+        return repository.findAll(new PageRequest(page, 20, new Sort("id"))).getContent();
+    }
+
+    /**
+     * Runs the benchmarks for each number of the concurrent clients.
+     *
+     * @param args the directory of the results
+     * @throws RunnerException if the benchmarks fail
+     */
+    public static void main(String[] args) throws RunnerException {
+        File results = new File(args.length > 0 ? args[0] : "build/reports/jmh");
+        results.mkdirs();
+        for (int clients : CLIENTS) {
+            Options options = new OptionsBuilder()
+                .include(PoolScalingBenchmark.class.getSimpleName())
+                .threads(clients)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(results, "pool-scaling-" + clients + ".json").getPath())
+                .build();
+            new Runner(options).run();
+        }
+    }
+}
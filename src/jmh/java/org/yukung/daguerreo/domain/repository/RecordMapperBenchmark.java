@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static org.yukung.daguerreo.infrastructure.Tables.*;
+
+import org.jooq.DSLContext;
+import org.jooq.RecordMapper;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultRecordMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yukung.daguerreo.domain.entity.BookApi;
+import org.yukung.daguerreo.infrastructure.tables.records.BookApiRecord;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link EntityRecordMapper} and {@link EntityRecordUnmapper} against the reflective
+ * {@link DefaultRecordMapper} and {@link org.jooq.Record#from(Object)} of jOOQ.
+ *
+ * @author yukung
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class RecordMapperBenchmark {
+
+    private DSLContext dsl;
+    private BookApiRecord record;
+    private BookApi bookApi;
+    private RecordMapper<BookApiRecord, BookApi> defaultMapper;
+    private RecordMapper<BookApiRecord, BookApi> entityMapper;
+    private EntityRecordUnmapper<BookApi> entityUnmapper;
+
+    @Setup
+    public void setUp() {
+        dsl = DSL.using(SQLDialect.H2);
+        record = dsl.newRecord(BOOK_API);
+        record.setId(2);
+        record.setName("Google Books API");
+        record.setUrl("https://www.googleapis.com/books/v1/volumes");
+        bookApi = new BookApi(3, "楽天ブックス書籍検索API", "https://app.rakuten.co.jp/services/api/BooksBook/Search/20130522");
+
+        EntityRecordMapperProvider provider = new EntityRecordMapperProvider();
+        defaultMapper = new DefaultRecordMapper<>(BOOK_API.recordType(), BookApi.class);
+        entityMapper = provider.provide(BOOK_API.recordType(), BookApi.class);
+        entityUnmapper = provider.provideUnmapper(BookApi.class, BOOK_API.fields());
+    }
+
+    @Benchmark
+    public BookApi mapByDefaultRecordMapper() {
+        return defaultMapper.map(record);
+    }
+
+    @Benchmark
+    public BookApi mapByEntityRecordMapper() {
+        return entityMapper.map(record);
+    }
+
+    @Benchmark
+    public BookApiRecord unmapByRecordFrom() {
+        BookApiRecord target = dsl.newRecord(BOOK_API);
+        target.from(bookApi);
+        return target;
+    }
+
+    @Benchmark
+    public BookApiRecord unmapByEntityRecordUnmapper() {
+        return entityUnmapper.unmap(bookApi, dsl.newRecord(BOOK_API));
+    }
+}
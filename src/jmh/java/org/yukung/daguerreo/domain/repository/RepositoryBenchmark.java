@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.yukung.daguerreo.domain.entity.BookApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks of the operations of {@link BasicJooqRepository} against {@code book_api}.
+ * <p>
+ * Each operation is measured both as the throughput and as the sampled latency, which reports the percentiles.
+ * Run by {@code ./gradlew jmh}, which also enables the GC profiler for the allocation rate and
+ * writes the results into {@code build/reports/jmh/results.json}.
+ * </p>
+ *
+ * @author yukung
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dspring.devtools.restart.enabled=false")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RepositoryBenchmark {
+
+    /**
+     * The number of rows in {@code book_api}.
+     */
+    static final int ROWS = 100_000;
+
+    /**
+     * The number of rows which are saved or deleted by the batch operations.
+     */
+    static final int BATCH = 100;
+
+    @Param({"10", "100", "1000"})
+    private int cardinality;
+
+    @Param({"0", "99000"})
+    private int offset;
+
+    private ConfigurableApplicationContext context;
+    private BookApiBenchmarkRepository repository;
+    private List<BookApi> seeds;
+    private Sort sort;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("repository");
+        repository = context.getBean(BookApiBenchmarkRepository.class);
+        seeds = BenchmarkApplication.seedBookApis(repository, ROWS);
+        sort = new Sort(Sort.Direction.ASC, "id");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BookApi findOne() {
+        return repository.findOne(randomSeed().getId());
+    }
+
+    @Benchmark
+    public List<BookApi> findAllByIds() {
+        List<Integer> ids = new ArrayList<>(cardinality);
+        for (int i = 0; i < cardinality; i++) {
+            ids.add(randomSeed().getId());
+        }
+        return repository.findAll(ids);
+    }
+
+    @Benchmark
+    public Page<BookApi> findAllByPageable() {
+        return repository.findAll(new PageRequest(offset / 20, 20, sort));
+    }
+
+    @Benchmark
+    public BookApi save() {
+        BookApi seed = randomSeed();
+        return repository.save(new BookApi(seed.getId(), seed.getName(), seed.getUrl() + "?"));
+    }
+
+    @Benchmark
+    public Iterable<BookApi> saveIterable() {
+        List<BookApi> entities = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            BookApi seed = randomSeed();
+            entities.add(new BookApi(seed.getId(), seed.getName(), seed.getUrl() + "?"));
+        }
+        return repository.save(entities);
+    }
+
+    @Benchmark
+    public void deleteIterable(Deletion deletion) {
+        repository.delete(deletion.targets);
+    }
+
+    @Benchmark
+    public void deleteInBatch(Deletion deletion) {
+        repository.deleteInBatch(deletion.targets);
+    }
+
+    @Benchmark
+    public int deleteAllByIdInBatch(Deletion deletion) {
+        return repository.deleteAllByIdInBatch(deletion.ids);
+    }
+
+    private BookApi randomSeed() {
+        return seeds.get(ThreadLocalRandom.current().nextInt(seeds.size()));
+    }
+
+    /**
+     * Rows which are inserted before each invocation to be deleted by the benchmark.
+     */
+    @State(Scope.Thread)
+    public static class Deletion {
+        private List<BookApi> targets;
+        private List<Integer> ids;
+
+        @Setup(Level.Invocation)
+        public void insert(RepositoryBenchmark benchmark) {
+            targets = BenchmarkApplication.seedBookApis(benchmark.repository, BATCH);
+            ids = targets.stream().map(BookApi::getId).collect(Collectors.toList());
+        }
+    }
+}
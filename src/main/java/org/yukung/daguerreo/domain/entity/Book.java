@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Entity of book.
+ * <p>
+ * The book API, ISBN and cover are loaded only by the aggregate queries, otherwise they are {@code null}.
+ * </p>
+ *
+ * @author yukung
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Book implements Identifiable<Long> {
+    private static final long serialVersionUID = -3418208187640232493L;
+    private Long id;
+    private Integer bookApiId;
+    private String itemId;
+    private String title;
+    private String author;
+    private String publisher;
+    private Integer pageNum;
+    private Integer price;
+    private Integer version;
+    private BookApi bookApi;
+    private Isbn isbn;
+    private BookCover bookCover;
+
+    /**
+     * Creates a book without the associations.
+     *
+     * @param id        the ID
+     * @param bookApiId the ID of the book API
+     * @param itemId    the item ID in the book API
+     * @param title     the title
+     * @param author    the author
+     * @param publisher the publisher
+     * @param pageNum   the number of pages
+     * @param price     the price
+     * @param version   the version for the optimistic lock
+     */
+    public Book(Long id, Integer bookApiId, String itemId, String title, String author, String publisher,
+                Integer pageNum, Integer price, Integer version) {
+        this(id, bookApiId, itemId, title, author, publisher, pageNum, price, version, null, null, null);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Entity of isbn.
+ *
+ * @author yukung
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Isbn implements Identifiable<Long> {
+    private static final long serialVersionUID = 5021337290514693085L;
+    private Long bookId;
+    private String isbn13;
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The ISBN is identified by the ID of the book.
+     * </p>
+     */
+    @Override
+    public Long getId() {
+        return bookId;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous variant of {@link JooqRepository} whose operations return {@link CompletableFuture}.
+ * <p>
+ * The operations are executed on the JDBC executor instead of the calling thread, so that the independent
+ * queries can be executed in parallel, e.g. by {@link CompletableFuture#allOf(CompletableFuture[])}.
+ * Each operation runs on its own connection outside of the transaction of the caller.
+ * </p>
+ *
+ * @param <E>  the type of entity
+ * @param <ID> the type of ID
+ * @author yukung
+ * @see JooqRepository
+ */
+public interface AsyncJooqRepository<E, ID extends Serializable> {
+
+    /**
+     * Returns all entities asynchronously.
+     *
+     * @return the future of all entities
+     * @see JooqRepository#findAll()
+     */
+    CompletableFuture<List<E>> findAll();
+
+    /**
+     * Returns the entities of the given IDs asynchronously.
+     *
+     * @param ids the IDs
+     * @return the future of the entities
+     * @see JooqRepository#findAll(Iterable)
+     */
+    CompletableFuture<List<E>> findAll(Iterable<ID> ids);
+
+    /**
+     * Returns all entities sorted by the given sort asynchronously.
+     *
+     * @param sort the sort condition, may be {@code null}
+     * @return the future of the entities
+     * @see JooqRepository#findAll(Sort)
+     */
+    CompletableFuture<List<E>> findAll(Sort sort);
+
+    /**
+     * Returns a {@link Page} of entities asynchronously.
+     *
+     * @param pageable the paging condition
+     * @return the future of the page
+     * @see JooqRepository#findAll(Pageable)
+     */
+    CompletableFuture<Page<E>> findAll(Pageable pageable);
+
+    /**
+     * Returns a {@link Slice} of entities which follow the given key asynchronously.
+     *
+     * @param lastSeenKey the ID of the last entity in the previous slice, or {@code null} for the first slice
+     * @param sort        the sort condition, may be {@code null}
+     * @param size        the maximum number of entities in the slice
+     * @return the future of the slice
+     * @see JooqRepository#findAllAfter(Serializable, Sort, int)
+     */
+    CompletableFuture<Slice<E>> findAllAfter(ID lastSeenKey, Sort sort, int size);
+
+    /**
+     * Performs the given action for each entity asynchronously while reading all entities from an open cursor.
+     * <p>
+     * The entities are pushed to the action on the JDBC executor one at a time as they are read,
+     * and the returned future completes when all of them have been consumed.
+     * </p>
+     *
+     * @param action the action to be performed for each entity
+     * @return the future which completes after the last entity
+     * @see JooqRepository#forEach(Consumer)
+     */
+    CompletableFuture<Void> forEach(Consumer<? super E> action);
+
+    /**
+     * Returns the entity of the given ID asynchronously.
+     *
+     * @param id the ID
+     * @return the future of the entity, which is completed with {@code null} if it does not exist
+     * @see JooqRepository#findOne(Serializable)
+     */
+    CompletableFuture<E> findOne(ID id);
+
+    /**
+     * Returns whether the entity of the given ID exists asynchronously.
+     *
+     * @param id the ID
+     * @return the future of the existence
+     * @see JooqRepository#exists(Serializable)
+     */
+    CompletableFuture<Boolean> exists(ID id);
+
+    /**
+     * Returns the number of entities asynchronously.
+     *
+     * @return the future of the number of entities
+     * @see JooqRepository#count()
+     */
+    CompletableFuture<Long> count();
+
+    /**
+     * Saves the given entity asynchronously.
+     *
+     * @param entity the entity
+     * @param <S>    the type of entity
+     * @return the future of the saved entity
+     * @see JooqRepository#save(Object)
+     */
+    <S extends E> CompletableFuture<S> save(S entity);
+
+    /**
+     * Saves the given entities asynchronously.
+     *
+     * @param entities the entities
+     * @param <S>      the type of entity
+     * @return the future of the saved entities
+     * @see JooqRepository#save(Iterable)
+     */
+    <S extends E> CompletableFuture<Iterable<S>> save(Iterable<S> entities);
+
+    /**
+     * Deletes the entity of the given ID asynchronously.
+     *
+     * @param id the ID
+     * @return the future which completes after the deletion
+     * @see JooqRepository#delete(Serializable)
+     */
+    CompletableFuture<Void> delete(ID id);
+
+    /**
+     * Deletes the given entities asynchronously.
+     *
+     * @param entities the entities
+     * @return the future which completes after the deletion
+     * @see JooqRepository#delete(Iterable)
+     */
+    CompletableFuture<Void> delete(Iterable<? extends E> entities);
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.Assert;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * {@link AsyncJooqRepository} which executes the operations of a {@link JooqRepository} on an {@link Executor}.
+ *
+ * @param <E>  the type of entity
+ * @param <ID> the type of ID
+ * @author yukung
+ * @see BasicJooqRepository#async()
+ */
+public class AsyncJooqRepositoryAdapter<E, ID extends Serializable> implements AsyncJooqRepository<E, ID> {
+
+    private final JooqRepository<E, ID> repository;
+    private final Executor executor;
+
+    /**
+     * Creates an adapter of the given repository.
+     *
+     * @param repository the repository which executes the operations
+     * @param executor   the executor on which the operations are executed
+     */
+    public AsyncJooqRepositoryAdapter(JooqRepository<E, ID> repository, Executor executor) {
+        Assert.notNull(repository);
+        Assert.notNull(executor);
+        this.repository = repository;
+        this.executor = executor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<List<E>> findAll() {
+        return CompletableFuture.supplyAsync(repository::findAll, executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<List<E>> findAll(Iterable<ID> ids) {
+        return CompletableFuture.supplyAsync(() -> repository.findAll(ids), executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<List<E>> findAll(Sort sort) {
+        return CompletableFuture.supplyAsync(() -> repository.findAll(sort), executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Page<E>> findAll(Pageable pageable) {
+        return CompletableFuture.supplyAsync(() -> repository.findAll(pageable), executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Slice<E>> findAllAfter(ID lastSeenKey, Sort sort, int size) {
+        return CompletableFuture.supplyAsync(() -> repository.findAllAfter(lastSeenKey, sort, size), executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Void> forEach(Consumer<? super E> action) {
+        return CompletableFuture.runAsync(() -> repository.forEach(action), executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<E> findOne(ID id) {
+        return CompletableFuture.supplyAsync(() -> repository.findOne(id), executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Boolean> exists(ID id) {
+        return CompletableFuture.supplyAsync(() -> repository.exists(id), executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Long> count() {
+        return CompletableFuture.supplyAsync(repository::count, executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <S extends E> CompletableFuture<S> save(S entity) {
+        return CompletableFuture.supplyAsync(() -> repository.save(entity), executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <S extends E> CompletableFuture<Iterable<S>> save(Iterable<S> entities) {
+        return CompletableFuture.supplyAsync(() -> repository.save(entities), executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Void> delete(ID id) {
+        return CompletableFuture.runAsync(() -> repository.delete(id), executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Void> delete(Iterable<? extends E> entities) {
+        return CompletableFuture.runAsync(() -> repository.delete(entities), executor);
+    }
+}
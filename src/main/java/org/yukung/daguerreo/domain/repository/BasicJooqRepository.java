@@ -19,31 +19,82 @@ package org.yukung.daguerreo.domain.repository;
 import static com.google.common.base.CaseFormat.*;
 import static org.jooq.impl.DSL.*;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.jooq.BatchBindStep;
 import org.jooq.Condition;
+import org.jooq.Configuration;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
 import org.jooq.Field;
+import org.jooq.ForeignKey;
+import org.jooq.InsertValuesStepN;
+import org.jooq.Query;
 import org.jooq.Record;
 import org.jooq.RecordMapper;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
 import org.jooq.SelectQuery;
+import org.jooq.SelectSeekStepN;
+import org.jooq.SelectWhereStep;
+import org.jooq.Sequence;
 import org.jooq.SortField;
 import org.jooq.Table;
 import org.jooq.UniqueKey;
 import org.jooq.UpdatableRecord;
+import org.jooq.conf.SettingsTools;
+import org.jooq.exception.DataAccessException;
+import org.jooq.exception.DataChangedException;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 import org.yukung.daguerreo.domain.entity.Identifiable;
+import org.yukung.daguerreo.metrics.OperationMetrics;
+import org.yukung.daguerreo.metrics.RepositoryMetrics;
 
 import java.io.Serializable;
+import java.lang.reflect.Array;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.annotation.PostConstruct;
 
 /**
@@ -57,9 +108,58 @@ import javax.annotation.PostConstruct;
 public abstract class BasicJooqRepository<R extends UpdatableRecord<R>, T extends Table<R>, E extends Identifiable<ID>,
     ID extends Serializable> implements JooqRepository<E, ID> {
 
+    /**
+     * The default number of rows which are sent in a single JDBC batch or {@code IN} list.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * The default number of rows which are fetched from the JDBC driver at a time by the streaming queries.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /**
+     * The default number of attempts of {@link #save(Identifiable)} when the optimistic lock fails.
+     */
+    public static final int DEFAULT_LOCK_ATTEMPTS = 3;
+
+    /**
+     * The default base delay in milliseconds before retrying {@link #save(Identifiable)}, which is doubled
+     * on every attempt and added a random jitter.
+     */
+    public static final long DEFAULT_LOCK_BACKOFF_MILLIS = 10;
+
+    /**
+     * The default interval in seconds to count the rows again for {@link PagingMode#CACHED}.
+     */
+    public static final long DEFAULT_COUNT_REFRESH_SECONDS = 60;
+
+    private static final Logger log = LoggerFactory.getLogger(BasicJooqRepository.class);
+
     private T table;
     private Class<E> entityClass;
     private RecordMapper<R, E> mapper;
+    private EntityRecordUnmapper<E> unmapper;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private EntityCache<R> cache;
+    private int arrayJoinThreshold;
+    private ExecutorService idQueryExecutor;
+    private Configuration optimisticLocking;
+    private FixedShapeQueries<R> queries;
+    private FixedShapeQueries<R> replicaQueries;
+    private volatile Sequence<Long> identitySequence;
+    private int lockAttempts = DEFAULT_LOCK_ATTEMPTS;
+    private long lockBackoffMillis = DEFAULT_LOCK_BACKOFF_MILLIS;
+    private MergeFunction<E> mergeFunction;
+    private SaveMode saveMode = SaveMode.STORE;
+    private PagingMode pagingMode = PagingMode.DERIVED;
+    private RowCountCache rowCount = new RowCountCache(DEFAULT_COUNT_REFRESH_SECONDS, TimeUnit.SECONDS);
+    private final List<RepositoryListener<E, ID>> listeners = new CopyOnWriteArrayList<>();
+    private IndexPolicy indexPolicy = IndexPolicy.WARN;
+    private Set<Field<?>> indexed;
+    private final Set<String> warned = ConcurrentHashMap.newKeySet();
+    private final Map<Class<?>, Projection<?>> projections = new ConcurrentHashMap<>();
 
     @SuppressWarnings("unchecked")
     @PostConstruct
@@ -73,12 +173,34 @@ public abstract class BasicJooqRepository<R extends UpdatableRecord<R>, T extend
             e.printStackTrace();    // TODO later
         }
         entityClass = (Class<E>) pt.getActualTypeArguments()[2];
-        mapper = dsl.configuration().recordMapperProvider().provide(table.recordType(), entityClass);
+        mapper = mapperProvider.provide(table.recordType(), entityClass);
+        unmapper = mapperProvider.provideUnmapper(entityClass, table.fields());
+        optimisticLocking = dsl.configuration()
+            .derive(SettingsTools.clone(dsl.settings()).withExecuteWithOptimisticLocking(true));
+        queries = new FixedShapeQueries<>(dsl, table, pk() == null ? new Field<?>[0] : pk());
+        indexed = new HashSet<>(indexedColumns());
+        if (replica != null) {
+            replicaQueries = new FixedShapeQueries<>(replica.dsl(), table, pk() == null ? new Field<?>[0] : pk());
+        }
     }
 
     @Autowired
     protected DSLContext dsl;
 
+    @Autowired
+    private EntityRecordMapperProvider mapperProvider;
+
+    @Autowired(required = false)
+    private RepositoryMetrics metrics = RepositoryMetrics.DISABLED;
+
+    @Autowired(required = false)
+    private JdbcExecutor jdbcExecutor;
+
+    @Autowired(required = false)
+    private ReadReplica replica;
+
+    private volatile AsyncJooqRepository<E, ID> async;
+
     /**
      * Returns the target {@link Table}.
      *
@@ -109,15 +231,338 @@ public abstract class BasicJooqRepository<R extends UpdatableRecord<R>, T extend
         return mapper;
     }
 
+    /**
+     * Returns the {@link DSLContext} for the read operations.
+     * <p>
+     * It is the {@link ReadReplica} if it is configured and its lag is within the tolerance, unless the current
+     * thread is in a read-write transaction, so that the transaction reads its own writes. A read-only transaction,
+     * i.e. {@code @Transactional(readOnly = true)}, and no transaction read from the replica.
+     * The routing can be forced by {@link ReadRouting}. Otherwise, it is the primary.
+     * </p>
+     *
+     * @return the DSL context to read from
+     */
+    protected DSLContext readDsl() {
+        if (replica == null) {
+            return dsl;
+        }
+        ReadRouting routing = ReadRouting.current();
+        if (routing == null) {
+            boolean readWrite = TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+            routing = readWrite ? ReadRouting.PRIMARY : ReadRouting.REPLICA;
+        }
+        return routing == ReadRouting.REPLICA && replica.isAvailable() ? replica.dsl() : dsl;
+    }
+
+    /**
+     * Executes the given read operation on {@link #readDsl()}.
+     * <p>
+     * If the operation fails on the replica, the replica is marked as unavailable and the operation is executed
+     * on the primary again.
+     * </p>
+     *
+     * @param operation the read operation
+     * @param <V>       the type of result
+     * @return the result of the operation
+     */
+    protected <V> V read(Function<DSLContext, V> operation) {
+        DSLContext reader = readDsl();
+        if (reader == dsl) {
+            return operation.apply(dsl);
+        }
+        try {
+            return operation.apply(reader);
+        } catch (DataAccessException | org.springframework.dao.DataAccessException e) {
+            replica.markUnavailable();
+            return operation.apply(dsl);
+        }
+    }
+
+    /**
+     * Returns the asynchronous view of this repository.
+     * <p>
+     * The operations are executed on the {@link JdbcExecutor}, or on the common fork-join pool if it is not
+     * configured.
+     * </p>
+     *
+     * @return the asynchronous repository
+     */
+    public AsyncJooqRepository<E, ID> async() {
+        if (async == null) {
+            Executor executor = jdbcExecutor == null ? ForkJoinPool.commonPool() : jdbcExecutor;
+            async = new AsyncJooqRepositoryAdapter<>(this, executor);
+        }
+        return async;
+    }
+
+    /**
+     * Creates a new {@link BatchLoader} which coalesces the lookups by ID into {@link #findAll(Iterable)}.
+     * <p>
+     * The loader caches the loaded entities during its life, so it should be created for a unit of work,
+     * e.g. by {@link BatchLoaderRegistry} for a request.
+     * </p>
+     *
+     * @return the batch loader
+     */
+    public BatchLoader<E, ID> batchLoader() {
+        return new BatchLoader<>(ids -> findAll(ids), batchSize);
+    }
+
+    /**
+     * Returns the number of rows which are sent in a single JDBC batch or {@code IN} list.
+     *
+     * @return the batch size
+     */
+    protected int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of rows which are sent in a single JDBC batch or {@code IN} list.
+     * <p>
+     * It is configured by {@code repository.batch-size}.
+     * </p>
+     *
+     * @param batchSize the batch size, must be positive
+     */
+    @Autowired
+    public void setBatchSize(@Value("${repository.batch-size:" + DEFAULT_BATCH_SIZE + "}") int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize must be positive.");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the number of rows which are fetched from the JDBC driver at a time by the streaming queries.
+     *
+     * @return the fetch size
+     */
+    protected int fetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets the number of rows which are fetched from the JDBC driver at a time by the streaming queries.
+     * <p>
+     * It is configured by {@code repository.fetch-size}.
+     * </p>
+     *
+     * @param fetchSize the fetch size, must be positive
+     */
+    @Autowired
+    public void setFetchSize(@Value("${repository.fetch-size:" + DEFAULT_FETCH_SIZE + "}") int fetchSize) {
+        Assert.isTrue(fetchSize > 0, "fetchSize must be positive.");
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Sets the number of IDs above which {@link #findAll(Iterable)} and {@link #delete(Iterable)} bind all IDs as a
+     * single array and join it by {@code UNNEST} instead of the chunked {@code IN} lists.
+     * <p>
+     * The array join keeps a single statement in the statement cache regardless of the number of IDs.
+     * It is used only for a single-column primary key, and is disabled by default.
+     * </p>
+     *
+     * @param arrayJoinThreshold the threshold, or zero to disable the array join
+     */
+    public void setArrayJoinThreshold(int arrayJoinThreshold) {
+        Assert.isTrue(arrayJoinThreshold >= 0, "arrayJoinThreshold must not be negative.");
+        this.arrayJoinThreshold = arrayJoinThreshold;
+    }
+
+    /**
+     * Sets the bounded executor which fetches the chunks of IDs of {@link #findAll(Iterable)} in parallel.
+     * <p>
+     * Each chunk is fetched on its own connection, so the chunks are fetched sequentially in a transaction
+     * to see its own changes. The chunks are fetched sequentially by default.
+     * </p>
+     *
+     * @param idQueryExecutor the executor, or {@code null} to fetch the chunks sequentially
+     */
+    public void setIdQueryExecutor(ExecutorService idQueryExecutor) {
+        this.idQueryExecutor = idQueryExecutor;
+    }
+
+    /**
+     * Sets how {@link #save(Identifiable)} retries when the optimistic lock fails.
+     * <p>
+     * The optimistic lock is applied to the tables which have the version column, i.e. the column named
+     * {@code version} by the convention of the code generation. When the version of the entity is older than
+     * the row, the entity is refreshed by the current row and the {@link MergeFunction}, then saved again.
+     * </p>
+     *
+     * @param attempts      the maximum number of attempts including the first one, must be positive
+     * @param backoffMillis the base delay in milliseconds before retrying, must not be negative
+     */
+    public void setOptimisticLockRetry(int attempts, long backoffMillis) {
+        Assert.isTrue(attempts > 0, "attempts must be positive.");
+        Assert.isTrue(backoffMillis >= 0, "backoffMillis must not be negative.");
+        this.lockAttempts = attempts;
+        this.lockBackoffMillis = backoffMillis;
+    }
+
+    /**
+     * Sets the {@link MergeFunction} which resolves the conflict of the optimistic lock.
+     * <p>
+     * By default, the values of the entity overwrite the current row, i.e. the last writer wins.
+     * </p>
+     *
+     * @param mergeFunction the merge function, or {@code null} for the default
+     */
+    public void setMergeFunction(MergeFunction<E> mergeFunction) {
+        this.mergeFunction = mergeFunction;
+    }
+
+    /**
+     * Sets how {@link #save(Identifiable)} and {@link #save(Iterable)} write the entities.
+     *
+     * @param saveMode the save mode, {@link SaveMode#STORE} by default
+     */
+    public void setSaveMode(SaveMode saveMode) {
+        Assert.notNull(saveMode);
+        this.saveMode = saveMode;
+    }
+
+    /**
+     * Sets how {@link #findAll(Pageable)} obtains the total number of entities.
+     *
+     * @param pagingMode the paging mode, {@link PagingMode#DERIVED} by default
+     */
+    public void setPagingMode(PagingMode pagingMode) {
+        Assert.notNull(pagingMode);
+        this.pagingMode = pagingMode;
+    }
+
+    /**
+     * Returns the {@link RowCountCache} which serves the total of {@link PagingMode#CACHED}.
+     *
+     * @return the row count cache
+     */
+    public RowCountCache rowCountCache() {
+        return rowCount;
+    }
+
+    /**
+     * Sets the {@link RowCountCache} which serves the total of {@link PagingMode#CACHED}.
+     *
+     * @param rowCount the row count cache
+     */
+    public void setRowCountCache(RowCountCache rowCount) {
+        Assert.notNull(rowCount);
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Returns the columns on which {@link #upsert(Iterable)} matches the existing rows.
+     * <p>
+     * Subclasses may override this method to match the rows by a unique key instead of the primary key,
+     * then the entities without ID are also merged and receive the IDs of the matched or inserted rows.
+     * </p>
+     *
+     * @return the columns of the primary key or a unique key
+     */
+    protected Field<?>[] upsertKey() {
+        return pk();
+    }
+
+    /**
+     * Returns the columns which lead an index of the table, by which the filters and the first column of the sorts
+     * are checked according to the {@link IndexPolicy}.
+     * <p>
+     * They are the first columns of the primary key, the unique keys and the foreign keys, since H2 creates an
+     * index for each of them. Subclasses may add the columns of the other indexes which are created by the SQL.
+     * </p>
+     *
+     * @return the indexed columns
+     */
+    protected Set<Field<?>> indexedColumns() {
+        Set<Field<?>> columns = new HashSet<>();
+        table.getKeys().forEach(key -> columns.add(key.getFields().get(0)));
+        table.getReferences().forEach(key -> columns.add(key.getFields().get(0)));
+        return columns;
+    }
+
+    /**
+     * Sets what to do with the queries which filter or sort by the columns without an index.
+     *
+     * @param indexPolicy the index policy, {@link IndexPolicy#WARN} by default
+     */
+    public void setIndexPolicy(IndexPolicy indexPolicy) {
+        Assert.notNull(indexPolicy);
+        this.indexPolicy = indexPolicy;
+    }
+
+    /**
+     * Returns the {@link EntityCache} of this repository.
+     *
+     * @return the cache, or {@code null} if the cache is disabled
+     */
+    public EntityCache<R> entityCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the {@link EntityCache} which is read through by {@link #findOne(Serializable)},
+     * {@link #exists(Serializable)} and {@link #findAll(Iterable)}.
+     * <p>
+     * The cache is disabled by default. The cached records are discarded when the entities are saved or deleted
+     * through this repository, and again when the transaction completes, so that neither the uncommitted nor the
+     * rolled back rows are cached. The changes which are made by others are visible only after the time to live has
+     * passed.
+     * </p>
+     *
+     * @param cache the cache, or {@code null} to disable the cache
+     */
+    public void setEntityCache(EntityCache<R> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Adds a {@link RepositoryListener} which is notified of the entities saved or deleted through this repository.
+     *
+     * @param listener the listener
+     */
+    public void addListener(RepositoryListener<E, ID> listener) {
+        Assert.notNull(listener);
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes the given {@link RepositoryListener}.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(RepositoryListener<E, ID> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns whether a multi-row {@code INSERT} returns the generated keys of all rows.
+     * <p>
+     * H2 reports only the identity of the last row, so the identities are drawn from the sequence of the identity
+     * column by a query in advance, and the rows are inserted with them by a JDBC batch in that case. Subclasses may
+     * override this method for other databases.
+     * </p>
+     *
+     * @return {@code true} if the generated keys can be read from a multi-row {@code INSERT ... RETURNING}
+     */
+    protected boolean supportsBatchGeneratedKeys() {
+        return dsl.configuration().dialect().family() != SQLDialect.H2;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public List<E> findAll() {
-        return dsl
+        return metrics.record(table, "findAll", this::fetchAll, List::size);
+    }
+
+    private List<E> fetchAll() {
+        return read(reader -> reader
             .selectFrom(table)
             .fetch()
-            .map(mapper());
+            .map(mapper()));
     }
 
     /**
@@ -125,22 +570,49 @@ public abstract class BasicJooqRepository<R extends UpdatableRecord<R>, T extend
      */
     @Override
     public List<E> findAll(Iterable<ID> ids) {
-        if (ids == null) {
-            return Collections.emptyList();
-        }
-        Field<?>[] pk = pk();
-        List<ID> keys = new ArrayList<>();
-        ids.forEach(keys::add);
+        return metrics.record(table, "findAllByIds", () -> {
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            Field<?>[] pk = pk();
+            List<ID> requested = new ArrayList<>();
+            ids.forEach(requested::add);
+            if (pk == null || requested.isEmpty()) {
+                return Collections.<E>emptyList();
+            }
 
-        List<E> result = new ArrayList<>();
-        if (pk != null) {
-            result = dsl
-                .selectFrom(table)
-                .where(in(pk, keys))
-                .fetch()
-                .map(mapper());
-        }
-        return result;
+            List<ID> keys = requested;
+            Map<Object, E> found = new HashMap<>();
+            if (cache != null) {
+                List<ID> misses = new ArrayList<>();
+                for (ID id : keys) {
+                    R cached = cache.get(keyOf(id));
+                    if (cached == null) {
+                        misses.add(id);
+                    } else {
+                        found.put(keyOf(id), mapper().map(cached));
+                    }
+                }
+                keys = misses;
+            }
+            if (!keys.isEmpty()) {
+                List<ID> targets = keys;
+                for (R record : read(reader -> selectByIds(reader, targets))) {
+                    cache(record);
+                    found.put(storedKeyOf(record), mapper().map(record));
+                }
+            }
+
+            // The rows are returned in the order of the IDs, whichever way they have been read.
+            List<E> result = new ArrayList<>(found.size());
+            for (ID id : requested) {
+                E entity = found.remove(keyOf(id));
+                if (entity != null) {
+                    result.add(entity);
+                }
+            }
+            return result;
+        }, List::size);
     }
 
     /**
@@ -148,176 +620,715 @@ public abstract class BasicJooqRepository<R extends UpdatableRecord<R>, T extend
      */
     @Override
     public List<E> findAll(Sort sort) {
-        // TODO Throw exception if the index of the specified columns does not exist.
-        SelectQuery<R> query = getQuery(sort);
-        return query.fetch().map(mapper());
+        return metrics.record(table, "findAllBySort", () -> {
+            return read(reader -> getQuery(reader, sort).fetch().map(mapper()));
+        }, List::size);
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The specification is checked against the indexes of the table according to the {@link IndexPolicy}.
+     * </p>
      */
     @Override
-    public Page<E> findAll(Pageable pageable) {
-        if (pageable == null) {
-            return new PageImpl<>(findAll());
-        }
-        SelectQuery<R> query = getQuery(pageable);
-        return new PageImpl<>(query.fetch().map(mapper()), pageable, count());
+    public List<E> findAll(Specification<E> spec) {
+        return metrics.record(table, "findAllBySpecification", () -> {
+            Condition condition = condition(spec);
+            return read(reader -> reader.selectFrom(table).where(condition).fetch().map(mapper()));
+        }, List::size);
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The specification and the sort are checked against the indexes of the table according to the
+     * {@link IndexPolicy}. The total is derived from the page when it is the last one, otherwise counted by the
+     * specification.
+     * </p>
      */
     @Override
-    public E findOne(ID id) {
-        Field<?>[] pk = pk();
-        R record = null;
-
-        if (pk != null) {
-            record = dsl
-                .selectFrom(table)
-                .where(equal(pk, id))
-                .fetchOne();
-        }
-        return record == null ? null : mapper().map(record);
+    public Page<E> findAll(Specification<E> spec, Pageable pageable) {
+        Assert.notNull(pageable);
+        return metrics.record(table, "findPageBySpecification", () -> {
+            Condition condition = condition(spec);
+            List<E> content = read(reader -> getQuery(reader, pageable, condition).fetch().map(mapper()));
+            int size = content.size();
+            boolean last = size < pageable.getPageSize() && (size > 0 || pageable.getOffset() == 0);
+            long total = last ? pageable.getOffset() + size : count(condition);
+            return new PageImpl<>(content, pageable, total);
+        }, Page::getNumberOfElements);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean exists(ID id) {
-        Field<?>[] pk = pk();
-
-        return pk != null && dsl
-            .selectCount()
-            .from(table)
-            .where(equal(pk, id))
-            .fetchOne(0, Integer.class) > 0;
+    public long count(Specification<E> spec) {
+        return metrics.record(table, "countBySpecification", () -> count(condition(spec)), count -> 1);
     }
 
     /**
-     * {@inheritDoc}
+     * Returns the plan of H2 for the query of {@link #findAll(Specification, Pageable)}, without checking the
+     * indexes.
+     * <p>
+     * The plan contains {@code tableScan} when the table is fully scanned, so the tests can catch the queries which
+     * do not use an index, e.g. {@code assertThat(repository.explain(spec, null)).doesNotContain("tableScan")}.
+     * </p>
+     *
+     * @param spec     the specification, may be {@code null}
+     * @param pageable the paging condition, may be {@code null}
+     * @return the plan
      */
-    @Override
-    public long count() {
-        return dsl
-            .selectCount()
-            .from(table)
-            .fetchOne(0, Long.class);
+    public String explain(Specification<E> spec, Pageable pageable) {
+        Condition condition = spec == null ? trueCondition() : spec.toCondition();
+        return read(reader -> {
+            SelectQuery<R> query = reader.selectFrom(table).where(condition).getQuery();
+            if (pageable != null) {
+                query.addOrderBy(sortFields(pageable.getSort()));
+                query.addLimit(pageable.getOffset(), pageable.getPageSize());
+            }
+            return reader.fetchOne("EXPLAIN " + reader.renderInlined(query)).getValue(0, String.class);
+        });
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The total number of entities is obtained according to the {@link PagingMode} of this repository.
+     * </p>
      */
     @Override
-    public <S extends E> S save(S entity) {
-        Assert.notNull(entity);
-        R record;
-
-        if (getId(entity) == null) {
-            record = dsl.newRecord(table, entity);
-        } else {
-            R fetched = fetchById(getId(entity));
-            if (fetched != null) {
-                fetched.from(entity);
-                record = fetched;
-            } else {
-                record = dsl.newRecord(table, entity);
+    public Page<E> findAll(Pageable pageable) {
+        return metrics.record(table, "findAllByPageable", () -> {
+            if (pageable == null) {
+                return new PageImpl<>(fetchAll());
             }
-        }
-        // TODO 楽観的ロックでかち合った時に DataChangedException 拾って refresh() とリトライ
-        record.store();
-        return record.into(entity);
+            if (pagingMode == PagingMode.WINDOW) {
+                return read(reader -> findPageWithTotal(reader, pageable));
+            }
+            List<E> content = read(reader -> getQuery(reader, pageable).fetch().map(mapper()));
+            return new PageImpl<>(content, pageable, total(pageable, content.size()));
+        }, Page::getNumberOfElements);
     }
 
     /**
      * {@inheritDoc}
      * <p>
-     * NOTE: Please note that the case of large number of entity to be saved which is becomes very slowly.
-     * Because in the inside are calling the save() in the loop.
+     * The primary key is appended to the sort as a tie-breaker, so the order of the rows is always total.
      * </p>
      */
     @Override
-    public <S extends E> Iterable<S> save(Iterable<S> entities) {
-        if (entities == null) {
-            return Collections.emptyList();
-        }
-        // TODO if jOOQ supports auto-generated ID when the batch update, modify using it here.
-        // See: https://github.com/jOOQ/jOOQ/issues/3327
-        List<S> result = new ArrayList<>();
-        entities.forEach(entity -> result.add(save(entity)));
-        return result;
+    public Slice<E> findAllAfter(ID lastSeenKey, Sort sort, int size) {
+        return metrics.record(table, "findAllAfter",
+            () -> seek(reader -> reader.selectFrom(table), mapper(), lastSeenKey, null, sort, size),
+            Slice::getNumberOfElements);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void delete(ID id) {
-        Field<?>[] pk = pk();
-
-        if (pk != null) {
-            dsl
-                .deleteFrom(table)
-                .where(equal(pk, id))
-                .execute();
+    public Slice<E> findAllAfter(Slice<E> previous) {
+        Assert.notNull(previous);
+        Sort sort = previous.getSort();
+        int size = previous.getSize();
+        if (!previous.hasContent()) {
+            return new SliceImpl<>(Collections.<E>emptyList(), new PageRequest(0, size, sort), false);
         }
+        E lastSeen = previous.getContent().get(previous.getNumberOfElements() - 1);
+        return metrics.record(table, "findAllAfter",
+            () -> seek(reader -> reader.selectFrom(table), mapper(), getId(lastSeen), lastSeen, sort, size),
+            Slice::getNumberOfElements);
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The columns of the projection are selected and mapped by {@link Projection}.
+     * </p>
      */
     @Override
-    public void delete(E entity) {
-        delete(Collections.singletonList(entity));
+    public <P> List<P> findAll(Class<P> projection, Sort sort) {
+        Projection<P> mapper = projection(projection);
+        return metrics.record(table, "findAllProjection",
+            () -> read(reader -> selectProjection(reader, mapper, sort).fetch(mapper)), List::size);
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The columns of the projection are selected and mapped by {@link Projection}. The total number of entities is
+     * obtained like {@link #findAll(Pageable)}, except that {@link PagingMode#WINDOW} counts by another query.
+     * </p>
      */
     @Override
-    public void delete(Iterable<? extends E> entities) {
-        Field<?>[] pk = pk();
-
-        if (pk != null) {
-            List<ID> ids = new ArrayList<>();
-            entities.forEach(entity -> ids.add(getId(entity)));
-            dsl
-                .deleteFrom(table)
-                .where(in(pk, ids))
-                .execute();
-        }
+    public <P> Page<P> findAll(Class<P> projection, Pageable pageable) {
+        Assert.notNull(pageable);
+        Projection<P> mapper = projection(projection);
+        return metrics.record(table, "findPageProjection", () -> {
+            List<P> content = read(reader -> {
+                SelectQuery<Record> query = selectProjection(reader, mapper, pageable.getSort());
+                query.addLimit(pageable.getOffset(), pageable.getPageSize());
+                return query.fetch(mapper);
+            });
+            return new PageImpl<>(content, pageable, total(pageable, content.size()));
+        }, Page::getNumberOfElements);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void deleteInBatch(Iterable<E> entities) {
-        List<R> targets = new ArrayList<>();
-        Field<?>[] pk = pk();
+    public <P> Stream<P> streamAll(Class<P> projection, Sort sort) {
+        Projection<P> mapper = projection(projection);
+        return recordStream("streamAllProjection", () -> {
+            Cursor<Record> cursor = selectProjection(readDsl(), mapper, sort).fetchSize(fetchSize).fetchLazy();
+            return StreamSupport.stream(cursor.spliterator(), false)
+                .map(mapper::map)
+                .onClose(cursor::close);
+        });
+    }
 
-        for (E entity : entities) {
-            R record = dsl.newRecord(table, entity);
-            if (pk != null) {
-                for (Field<?> field : pk) {
-                    // To replace the "changed" flag with true which is same as the fetched record.
-                    record.changed(field, false);
-                }
-                // If a entity property is NULL, but the column is NOT NULL
-                // then we should let the database apply DEFAULT values
-                for (int i = 0; i < record.size(); i++) {
-                    if (record.getValue(i) == null) {
-                        if (!record.field(i).getDataType().nullable()) {
-                            record.changed(i, false);
-                        }
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The primary key is appended to the sort as a tie-breaker. The columns of the sort need not be a part of the
+     * projection.
+     * </p>
+     */
+    @Override
+    public <P> Slice<P> findAllAfter(Class<P> projection, ID lastSeenKey, Sort sort, int size) {
+        Projection<P> mapper = projection(projection);
+        return metrics.record(table, "findAllAfterProjection",
+            () -> seek(reader -> reader.select(mapper.fields()).from(table), mapper, lastSeenKey, null, sort, size),
+            Slice::getNumberOfElements);
+    }
+
+    /**
+     * Seeks to the row after the last seen one, of which sort values are read from the given entity, or otherwise
+     * from the row of the given key.
+     */
+    private <X extends Record, V> Slice<V> seek(Function<DSLContext, SelectWhereStep<X>> from,
+                                                 RecordMapper<? super X, V> mapper, ID lastSeenKey, E lastSeen,
+                                                 Sort sort, int size) {
+        Assert.isTrue(size > 0, "size must be positive.");
+        Field<?>[] pk = pk();
+        Assert.state(pk != null, "findAllAfter() requires the primary key.");
+        checkSort(sort);
+
+        List<Field<?>> columns = new ArrayList<>();
+        List<SortField<?>> orderBy = new ArrayList<>();
+        Sort.Direction direction = Sort.Direction.ASC;
+        if (sort != null) {
+            for (Sort.Order order : sort) {
+                Field<?> field = sortColumn(order);
+                if (field != null && !columns.contains(field)) {
+                    columns.add(field);
+                    orderBy.add(sortField(field, order.getDirection()));
+                    direction = order.getDirection();
+                }
+            }
+        }
+        for (Field<?> field : pk) {
+            if (!columns.contains(field)) {
+                columns.add(field);
+                orderBy.add(sortField(field, direction));
+            }
+        }
+
+        List<X> records = read(reader -> {
+            SelectSeekStepN<X> select = from.apply(reader).orderBy(orderBy);
+            if (lastSeenKey == null) {
+                return select.limit(size + 1).fetch();
+            }
+            Object[] seek;
+            if (lastSeen != null) {
+                seek = newRecord(lastSeen).into(columns.toArray(new Field<?>[columns.size()])).intoArray();
+            } else {
+                seek = seekValues(reader, columns, lastSeenKey);
+            }
+            return select.seek(seek).limit(size + 1).fetch();
+        });
+
+        boolean hasNext = records.size() > size;
+        List<V> content = records.stream()
+            .limit(size)
+            .map(mapper::map)
+            .collect(Collectors.toList());
+        return new SliceImpl<>(content, new PageRequest(0, size, sort), hasNext);
+    }
+
+    /**
+     * Returns the sort values of the row of the given key.
+     * <p>
+     * If the row has been deleted, the values are known only when the rows are sorted by the primary key alone.
+     * </p>
+     */
+    private Object[] seekValues(DSLContext reader, List<Field<?>> columns, ID lastSeenKey) {
+        Field<?>[] pk = pk();
+        Record row = reader
+            .select(columns)
+            .from(table)
+            .where(equal(pk, lastSeenKey))
+            .fetchOne();
+        if (row != null) {
+            return row.intoArray();
+        }
+        List<Field<?>> keys = Arrays.asList(pk);
+        if (!keys.containsAll(columns)) {
+            throw new DataAccessException("The row of the last seen key " + lastSeenKey + " has been deleted, "
+                + "so that the rows after it are unknown. Seek from the last seen entity by findAllAfter(Slice).");
+        }
+        Object[] key = keyValues(lastSeenKey);
+        return columns.stream().map(column -> key[keys.indexOf(column)]).toArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <P> Projection<P> projection(Class<P> type) {
+        Assert.notNull(type);
+        return (Projection<P>) projections.computeIfAbsent(type,
+            key -> mapperProvider.provideProjection(key, table.fields()));
+    }
+
+    private SelectQuery<Record> selectProjection(DSLContext reader, Projection<?> projection, Sort sort) {
+        SelectQuery<Record> query = reader.selectQuery();
+        query.addSelect(projection.fields());
+        query.addFrom(table);
+        query.addOrderBy(orderBy(sort));
+        return query;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<E> streamAll(Sort sort) {
+        return recordStream("streamAll", () -> stream(sort));
+    }
+
+    private Stream<E> stream(Sort sort) {
+        Cursor<R> cursor = getQuery(readDsl(), sort).fetchSize(fetchSize).fetchLazy();
+        return StreamSupport.stream(cursor.spliterator(), false)
+            .map(mapper()::map)
+            .onClose(cursor::close);
+    }
+
+    /**
+     * Records a stream as an operation from its opening until it is closed, with the rows read until then.
+     */
+    private <V> Stream<V> recordStream(String operation, Supplier<Stream<V>> opener) {
+        if (!metrics.isEnabled()) {
+            return opener.get();
+        }
+        OperationMetrics operationMetrics = metrics.operation(table.getName(), operation);
+        long start = System.nanoTime();
+        Stream<V> stream;
+        try {
+            stream = opener.get();
+        } catch (RuntimeException | Error e) {
+            operationMetrics.failure(System.nanoTime() - start);
+            throw e;
+        }
+        long[] rows = new long[1];
+        return stream
+            .peek(value -> rows[0]++)
+            .onClose(() -> operationMetrics.success(System.nanoTime() - start, rows[0]));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        Assert.notNull(action);
+        metrics.record(table, "forEach", () -> {
+            try (Stream<E> stream = stream(null)) {
+                return stream.mapToLong(entity -> {
+                    action.accept(entity);
+                    return 1;
+                }).sum();
+            }
+        }, Long::longValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public E findOne(ID id) {
+        return metrics.record(table, "findOne", () -> {
+            Field<?>[] pk = pk();
+            R record = null;
+
+            if (pk != null && cache != null) {
+                record = cache.get(keyOf(id));
+            }
+            if (pk != null && record == null) {
+                record = read(reader -> queries(reader).findOne(keyValues(id)));
+                cache(record);
+            }
+            return record == null ? null : mapper().map(record);
+        }, entity -> entity == null ? 0 : 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(ID id) {
+        return metrics.record(table, "exists", () -> {
+            Field<?>[] pk = pk();
+            if (pk != null && cache != null && cache.get(keyOf(id)) != null) {
+                return true;
+            }
+
+            return pk != null && read(reader -> queries(reader).exists(keyValues(id)));
+        }, exists -> exists ? 1 : 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count() {
+        return metrics.record(table, "count", () -> read(reader -> queries(reader).count()), count -> 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entity is compared with the current row, and only the changed columns are updated. The row is not updated
+     * at all if nothing has been changed. When the {@link EntityCache} is enabled and the table has a version column,
+     * the cached record is compared instead of reading the row, and a stale one is detected by the optimistic lock.
+     * </p>
+     */
+    @Override
+    public <S extends E> S save(S entity) {
+        if (saveMode == SaveMode.UPSERT) {
+            return upsert(entity);
+        }
+        return metrics.record(table, "save", () -> {
+            Assert.notNull(entity);
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    S saved = store(entity);
+                    notifySaved(Collections.singletonList(saved));
+                    return saved;
+                } catch (DataChangedException e) {
+                    if (attempt >= lockAttempts || getId(entity) == null) {
+                        throw e;
                     }
+                    backoff(attempt);
+                    refresh(entity, e);
                 }
-                targets.add(record);
             }
+        }, saved -> 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entities are saved in JDBC batches of {@link #batchSize()} rows. The existing rows are fetched by chunked
+     * {@code IN} queries instead of one {@code SELECT} per entity, then inserts and updates are sent as batches.
+     * Entities without ID receive the generated keys of the inserted rows.
+     * </p>
+     */
+    @Override
+    public <S extends E> Iterable<S> save(Iterable<S> entities) {
+        if (saveMode == SaveMode.UPSERT) {
+            return upsert(entities);
         }
-        dsl.batchDelete(targets).execute();
+        return metrics.record(table, "saveAll", () -> {
+            if (entities == null) {
+                return Collections.emptyList();
+            }
+            List<S> result = new ArrayList<>();
+            entities.forEach(result::add);
+            Field<?>[] pk = pk();
+            if (result.isEmpty() || pk == null) {
+                result.forEach(this::save);
+                return result;
+            }
+
+            List<ID> ids = new ArrayList<>();
+            result.forEach(entity -> {
+                if (getId(entity) != null) {
+                    ids.add(getId(entity));
+                }
+            });
+            Map<Object, R> stored = fetchByIds(ids);
+
+            List<R> records = new ArrayList<>(result.size());
+            List<R> inserts = new ArrayList<>();
+            List<R> updates = new ArrayList<>();
+            List<R> generated = new ArrayList<>();
+            Set<R> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (S entity : result) {
+                ID id = getId(entity);
+                R record;
+                if (id == null) {
+                    record = newRecord(entity);
+                    generated.add(record);
+                } else {
+                    record = stored.get(keyOf(id));
+                    if (record == null) {
+                        record = newRecord(entity);
+                        // The same ID may appear again later in the entities,
+                        // so that it will be merged into this record.
+                        stored.put(keyOf(id), record);
+                        inserts.add(record);
+                        pending.add(record);
+                    } else {
+                        copy(entity, record);
+                        if (!pending.contains(record)) {
+                            checkVersion(record);
+                        }
+                        resetUnchanged(record);
+                        if (pending.add(record)) {
+                            updates.add(record);
+                        }
+                    }
+                }
+                records.add(record);
+            }
+
+            Lists.partition(inserts, batchSize).forEach(chunk -> dsl.batchInsert(chunk).execute());
+            // The records without changes are not updated.
+            updates.removeIf(record -> !record.changed());
+            Lists.partition(updates, batchSize).forEach(chunk -> dsl.batchUpdate(chunk).execute());
+            insertWithGeneratedKeys(generated);
+            rowCount.add(inserts.size() + generated.size());
+
+            List<ID> saved = new ArrayList<>(result.size());
+            for (int i = 0; i < result.size(); i++) {
+                copy(records.get(i), result.get(i));
+                saved.add(getId(result.get(i)));
+            }
+            evict(saved);
+            notifySaved(result);
+            return result;
+        }, Iterables::size);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <S extends E> S upsert(S entity) {
+        Assert.notNull(entity);
+        upsert(Collections.singletonList(entity));
+        return entity;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entities are merged in JDBC batches of {@link #batchSize()} rows on the columns of {@link #upsertKey()}.
+     * When the key is the primary key, the entities without ID are inserted with the generated keys instead.
+     * Otherwise the IDs of them are read back by the key in a chunked query. The optimistic lock is not applied,
+     * but the version of the merged rows is incremented, so that the entities which have been read before can not
+     * be saved over them. The entities receive the new versions which are read back by the key.
+     * </p>
+     */
+    @Override
+    public <S extends E> Iterable<S> upsert(Iterable<S> entities) {
+        return metrics.record(table, "upsert", () -> {
+            if (entities == null) {
+                return Collections.emptyList();
+            }
+            List<S> result = new ArrayList<>();
+            entities.forEach(result::add);
+            Field<?>[] pk = pk();
+            Field<?>[] key = upsertKey();
+            Assert.state(pk != null && key != null && key.length > 0, "upsert requires a primary key.");
+            boolean byPk = Arrays.equals(key, pk);
+
+            List<R> records = new ArrayList<>(result.size());
+            List<R> merged = new ArrayList<>();
+            List<R> unidentified = new ArrayList<>();
+            List<R> generated = new ArrayList<>();
+            for (S entity : result) {
+                R record = newRecord(entity);
+                if (getId(entity) != null) {
+                    merged.add(record);
+                } else if (byPk) {
+                    generated.add(record);
+                } else {
+                    unidentified.add(record);
+                }
+                records.add(record);
+            }
+
+            Field<?> version = table.getRecordVersion();
+            List<Field<?>> columns = Arrays.stream(table.fields())
+                .filter(field -> !field.equals(version))
+                .collect(Collectors.toList());
+            merge(merged, columns, key);
+            columns.removeAll(Arrays.asList(pk));
+            merge(unidentified, columns, key);
+            insertWithGeneratedKeys(generated);
+            Map<Object, R> matched = fetchByUpsertKey(unidentified, key);
+            if (version != null) {
+                matched.putAll(fetchByUpsertKey(merged, key));
+            }
+            if (merged.isEmpty() && unidentified.isEmpty()) {
+                rowCount.add(generated.size());
+            } else {
+                // It is unknown whether the merged rows have been inserted or updated.
+                rowCount.invalidate();
+            }
+
+            List<ID> saved = new ArrayList<>(result.size());
+            for (int i = 0; i < result.size(); i++) {
+                R record = records.get(i);
+                boolean reread = getId(result.get(i)) == null ? !byPk : version != null;
+                if (reread) {
+                    record = matched.get(Arrays.asList(record.into(key).intoArray()));
+                }
+                if (record != null) {
+                    copy(record, result.get(i));
+                }
+                if (getId(result.get(i)) != null) {
+                    saved.add(getId(result.get(i)));
+                }
+            }
+            evict(saved);
+            notifySaved(result);
+            return result;
+        }, Iterables::size);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The version column is incremented without being checked, unless it is given. The cached record is evicted,
+     * and the entity is read again only if there are any {@link RepositoryListener}s to be notified.
+     * </p>
+     */
+    @Override
+    public int patch(ID id, Map<? extends Field<?>, ?> values) {
+        return metrics.record(table, "patch", () -> {
+            Field<?>[] pk = pk();
+            Assert.state(pk != null, "patch() requires the primary key.");
+            Assert.notNull(id);
+            Assert.notEmpty(values, "values must not be empty.");
+            Map<Field<?>, Object> changes = new LinkedHashMap<>();
+            values.forEach((field, value) -> {
+                Field<?> column = table.field(field);
+                Assert.isTrue(column != null, field + " is not a column of " + table.getName() + ".");
+                Assert.isTrue(!Arrays.asList(pk).contains(column), "The primary key can not be patched.");
+                changes.put(column, value instanceof Field ? value : column.getDataType().convert(value));
+            });
+            Field<? extends Number> version = table.getRecordVersion();
+            if (version != null && !changes.containsKey(version)) {
+                changes.put(version, version.add(1));
+            }
+
+            int rows = dsl.update(table).set(changes).where(equal(pk, id)).execute();
+            evict(Collections.singletonList(id));
+            if (rows > 0 && !listeners.isEmpty()) {
+                R record = fetchById(id);
+                if (record != null) {
+                    notifySaved(Collections.singletonList(mapper().map(record)));
+                }
+            }
+            return rows;
+        }, Integer::longValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(ID id) {
+        metrics.record(table, "delete", () -> {
+            Field<?>[] pk = pk();
+            int rows = 0;
+
+            if (pk != null) {
+                rows = queries.delete(keyValues(id));
+                evict(Collections.singletonList(id));
+                rowCount.add(-rows);
+                notifyDeleted(Collections.singletonList(id));
+            }
+            return rows;
+        }, Integer::longValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(E entity) {
+        delete(Collections.singletonList(entity));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(Iterable<? extends E> entities) {
+        metrics.record(table, "deleteAll", () -> {
+            Field<?>[] pk = pk();
+            int rows = 0;
+
+            if (pk != null) {
+                List<ID> ids = new ArrayList<>();
+                entities.forEach(entity -> ids.add(getId(entity)));
+                rows = deleteByIds(dsl, ids);
+                evict(ids);
+                rowCount.add(-rows);
+                notifyDeleted(ids);
+            }
+            return rows;
+        }, Integer::longValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entities are deleted by their IDs in chunks as {@link #deleteAllByIdInBatch(Iterable)}, but the deletion
+     * never cascades even if {@link #cascadeDeletes()} is enabled, so it fails if any row refers to the entities.
+     * </p>
+     */
+    @Override
+    public void deleteInBatch(Iterable<E> entities) {
+        Assert.notNull(entities);
+        Iterable<ID> ids = () -> StreamSupport.stream(entities.spliterator(), false).map(this::getId).iterator();
+        metrics.record(table, "deleteInBatch", () -> deleteInChunks(ids, false), Integer::longValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The IDs are consumed in chunks of {@link #batchSize()}, each of which is deleted by a single
+     * {@code DELETE ... WHERE id IN (...)}, so neither records nor the whole list of IDs are built. If
+     * {@link #cascadeDeletes()} is enabled, the rows which refer to a chunk are deleted first, from the deepest
+     * table. Each chunk is deleted in a transaction of its own, or in a nested one within the current transaction,
+     * so a chunk is never deleted partially, while the chunks deleted before a failure remain deleted.
+     * </p>
+     */
+    @Override
+    public int deleteAllByIdInBatch(Iterable<ID> ids) {
+        Assert.notNull(ids);
+        return metrics.record(table, "deleteAllByIdInBatch", () -> deleteInChunks(ids, cascadeDeletes()),
+            Integer::longValue);
+    }
+
+    /**
+     * Returns whether {@link #deleteAllByIdInBatch(Iterable)} deletes the rows of the other tables which refer to
+     * the deleted rows by the foreign keys.
+     * <p>
+     * It is disabled by default, so the deletion fails if any row refers to the deleted rows. The cascade follows
+     * the foreign keys of the generated tables recursively, but it does not evict the caches of the other
+     * repositories. The other deletions never cascade.
+     * </p>
+     *
+     * @return {@code true} to delete the referring rows
+     */
+    protected boolean cascadeDeletes() {
+        return false;
     }
 
     /**
@@ -328,6 +1339,42 @@ public abstract class BasicJooqRepository<R extends UpdatableRecord<R>, T extend
         throw new UnsupportedOperationException("deleteAll() is not supported.");
     }
 
+    private void notifySaved(List<? extends E> entities) {
+        if (!listeners.isEmpty() && !entities.isEmpty()) {
+            afterCommit(() -> listeners.forEach(listener -> listener.saved(entities)));
+        }
+    }
+
+    private void notifyDeleted(List<ID> ids) {
+        if (!listeners.isEmpty() && !ids.isEmpty()) {
+            afterCommit(() -> listeners.forEach(listener -> listener.deleted(ids)));
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void afterCompletion(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+
     private ID getId(E entity) {
         Assert.notNull(entity);
         return entity.getId();
@@ -360,46 +1407,669 @@ public abstract class BasicJooqRepository<R extends UpdatableRecord<R>, T extend
         }
     }
 
+    private Object keyOf(ID id) {
+        Field<?>[] pk = pk();
+        if (pk.length == 1) {
+            return pk[0].getDataType().convert(id);
+        } else {
+            return Arrays.asList(((Record) id).intoArray());
+        }
+    }
+
+    private Object[] keyValues(ID id) {
+        Field<?>[] pk = pk();
+        if (pk.length == 1) {
+            return new Object[] {pk[0].getDataType().convert(id)};
+        } else {
+            return ((Record) id).intoArray();
+        }
+    }
+
+    private Object storedKeyOf(R record) {
+        Field<?>[] pk = pk();
+        if (pk.length == 1) {
+            return record.getValue(pk[0]);
+        } else {
+            return Arrays.asList(record.key().intoArray());
+        }
+    }
+
+    private <S extends E> S store(S entity) {
+        R record = null;
+
+        if (getId(entity) != null) {
+            R fetched = cachedCopy(getId(entity));
+            if (fetched != null) {
+                copy(entity, fetched);
+                resetUnchanged(fetched);
+                if (!fetched.changed() || !sameVersion(fetched)) {
+                    // The cached record may be stale, so that the row decides whether it is changed.
+                    fetched = null;
+                }
+            }
+            if (fetched == null) {
+                fetched = fetchById(getId(entity));
+                if (fetched != null) {
+                    copy(entity, fetched);
+                }
+            }
+            if (fetched != null) {
+                checkVersion(fetched);
+                resetUnchanged(fetched);
+                record = fetched;
+            }
+        }
+        boolean inserted = record == null;
+        if (inserted) {
+            record = newRecord(entity);
+        } else if (!record.changed()) {
+            // Nothing has been changed, so that the row is not updated.
+            cache(record);
+            return copy(record, entity);
+        }
+        if (table.getRecordVersion() != null || table.getRecordTimestamp() != null) {
+            record.attach(optimisticLocking);
+        }
+        record.store();
+        if (inserted) {
+            rowCount.add(1);
+        }
+        S saved = copy(record, entity);
+        evict(Collections.singletonList(getId(saved)));
+        return saved;
+    }
+
+    /**
+     * Throws {@link DataChangedException} if the version of the entity which has been copied to the fetched record
+     * is different from the version in the database.
+     */
+    @SuppressWarnings("unchecked")
+    private void checkVersion(R fetched) {
+        Field<Object> version = (Field<Object>) table.getRecordVersion();
+        if (version == null) {
+            return;
+        }
+        Object expected = fetched.getValue(version);
+        Object actual = fetched.original(version);
+        if (expected == null) {
+            // The entity does not know its version, so that the last writer wins.
+            fetched.setValue(version, actual);
+        } else if (!expected.equals(actual)) {
+            throw new DataChangedException("Database record has been changed since the entity was read.");
+        }
+    }
+
+    /**
+     * Returns a copy of the cached record of the given ID which can be the base of an update, or {@code null}.
+     * <p>
+     * The cached record is used only for the tables which have a version column, where the update of a stale
+     * record fails by the optimistic lock.
+     * </p>
+     */
+    private R cachedCopy(ID id) {
+        if (cache == null || table.getRecordVersion() == null) {
+            return null;
+        }
+        R cached = cache.get(keyOf(id));
+        if (cached == null) {
+            return null;
+        }
+        R copy = cached.into(table);
+        copy.attach(dsl.configuration());
+        copy.changed(false);
+        return copy;
+    }
+
+    /**
+     * Returns whether the version of the entity which has been copied to the record is unknown or same as the
+     * version of the record.
+     */
+    private boolean sameVersion(R record) {
+        Field<?> version = table.getRecordVersion();
+        return version == null || record.getValue(version) == null
+            || record.getValue(version).equals(record.original(version));
+    }
+
+    /**
+     * Clears the changed flags of the fields which have the original values, so that only the changed columns
+     * are updated. {@link Record#setValue(Field, Object)} marks the fields as changed even for the same values.
+     */
+    private void resetUnchanged(R record) {
+        for (int i = 0; i < record.size(); i++) {
+            if (record.changed(i) && Objects.deepEquals(record.getValue(i), record.original(i))) {
+                record.changed(i, false);
+            }
+        }
+    }
+
+    /**
+     * Refreshes the given entity after the conflict by the current row and the {@link MergeFunction}.
+     */
+    @SuppressWarnings("unchecked")
+    private <S extends E> void refresh(S entity, DataChangedException conflict) {
+        evict(Collections.singleton(getId(entity)));
+        R current = fetchById(getId(entity));
+        if (current == null) {
+            throw conflict;
+        }
+        E merged = mergeFunction == null ? entity : mergeFunction.merge(mapper().map(current), entity);
+        R record = newRecord(merged);
+        Field<Object> version = (Field<Object>) table.getRecordVersion();
+        if (version != null) {
+            record.setValue(version, current.getValue(version));
+        }
+        Field<Object> timestamp = (Field<Object>) table.getRecordTimestamp();
+        if (timestamp != null) {
+            record.setValue(timestamp, current.getValue(timestamp));
+        }
+        copy(record, entity);
+    }
+
+    private void backoff(int attempt) {
+        long millis = lockBackoffMillis << Math.min(attempt - 1, 16);
+        try {
+            Thread.sleep(millis + ThreadLocalRandom.current().nextLong(millis + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrupted while waiting to retry the save.", e);
+        }
+    }
+
+    private R newRecord(E entity) {
+        return unmapper == null ? dsl.newRecord(table, entity) : unmapper.unmap(entity, dsl.newRecord(table));
+    }
+
+    private void copy(E entity, R record) {
+        if (unmapper == null) {
+            record.from(entity);
+        } else {
+            unmapper.unmap(entity, record);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <S extends E> S copy(R record, S entity) {
+        if (mapper instanceof EntityRecordMapper) {
+            return ((EntityRecordMapper<R, E>) mapper).map(record, entity);
+        } else {
+            return record.into(entity);
+        }
+    }
+
+    /**
+     * Caches the record which has been read.
+     * <p>
+     * The records read in a read-write transaction may be uncommitted, so that they are not shared with the other
+     * threads. The written records are never cached but evicted by {@link #evict(Collection)}.
+     * </p>
+     */
+    private void cache(R record) {
+        if (cache != null && record != null && !writeTransactionActive()) {
+            cache.put(storedKeyOf(record), record);
+        }
+    }
+
+    /**
+     * Evicts the records of the written rows now and again when the transaction completes, because the other
+     * threads may cache the old rows until it is committed, and the rolled back rows must not remain cached.
+     */
+    private void evict(Collection<ID> ids) {
+        if (cache != null && !ids.isEmpty()) {
+            EntityCache<R> target = cache;
+            List<Object> keys = ids.stream().map(this::keyOf).collect(Collectors.toList());
+            keys.forEach(target::invalidate);
+            afterCompletion(() -> keys.forEach(target::invalidate));
+        }
+    }
+
+    private static boolean writeTransactionActive() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+            && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private Map<Object, R> fetchByIds(List<ID> ids) {
+        Map<Object, R> records = new HashMap<>();
+        Field<?>[] pk = pk();
+
+        if (pk != null && !ids.isEmpty()) {
+            selectByIds(ids).forEach(record -> records.put(storedKeyOf(record), record));
+        }
+        return records;
+    }
+
+    private List<R> selectByIds(List<ID> ids) {
+        return selectByIds(dsl, ids);
+    }
+
+    private List<R> selectByIds(DSLContext reader, List<ID> ids) {
+        Field<?>[] pk = pk();
+        if (useArrayJoin(pk, ids)) {
+            return reader.selectFrom(table).where(inArray(pk[0], ids)).fetch();
+        }
+
+        List<List<ID>> chunks = Lists.partition(ids, batchSize);
+        List<R> records = new ArrayList<>(ids.size());
+        if (chunks.size() > 1 && idQueryExecutor != null
+            && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            List<Future<Result<R>>> futures = chunks.stream()
+                .map(chunk -> idQueryExecutor.submit(() -> reader.selectFrom(table).where(in(pk, chunk)).fetch()))
+                .collect(Collectors.toList());
+            for (Future<Result<R>> future : futures) {
+                records.addAll(await(future));
+            }
+        } else {
+            for (List<ID> chunk : chunks) {
+                records.addAll(reader.selectFrom(table).where(in(pk, chunk)).fetch());
+            }
+        }
+        return records;
+    }
+
+    private int deleteInChunks(Iterable<ID> ids, boolean cascade) {
+        Field<?>[] pk = pk();
+        if (pk == null) {
+            return 0;
+        }
+        int rows = 0;
+        List<ID> chunk = new ArrayList<>(batchSize);
+        for (ID id : ids) {
+            chunk.add(id);
+            if (chunk.size() == batchSize) {
+                rows += deleteChunk(chunk, cascade);
+                chunk = new ArrayList<>(batchSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            rows += deleteChunk(chunk, cascade);
+        }
+        return rows;
+    }
+
+    private int deleteChunk(List<ID> ids, boolean cascade) {
+        int rows = dsl.transactionResult(configuration -> {
+            DSLContext writer = DSL.using(configuration);
+            if (cascade) {
+                Set<Table<?>> path = new HashSet<>();
+                path.add(table);
+                for (UniqueKey<R> key : table.getKeys()) {
+                    deleteReferences(writer, key, in(pk(), ids), path);
+                }
+            }
+            return deleteByIds(writer, ids);
+        });
+        evict(ids);
+        rowCount.add(-rows);
+        notifyDeleted(ids);
+        return rows;
+    }
+
+    /**
+     * Deletes the rows which refer to the rows of the given condition by the given key, after the rows which refer
+     * to them in turn.
+     */
+    private void deleteReferences(DSLContext writer, UniqueKey<?> key, Condition referred, Set<Table<?>> path) {
+        for (ForeignKey<?, ?> reference : key.getReferences()) {
+            Table<?> referring = reference.getTable();
+            Assert.state(path.add(referring),
+                "The foreign keys of " + referring.getName() + " are cyclic, which can not be cascaded.");
+            Condition condition = referring(reference, key, referred);
+            for (UniqueKey<?> referringKey : referring.getKeys()) {
+                deleteReferences(writer, referringKey, condition, path);
+            }
+            writer.deleteFrom(referring).where(condition).execute();
+            path.remove(referring);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Condition referring(ForeignKey<?, ?> reference, UniqueKey<?> key, Condition referred) {
+        if (reference.getFields().size() == 1) {
+            Field<Object> field = (Field<Object>) reference.getFields().get(0);
+            Field<Object> referredField = (Field<Object>) key.getFields().get(0);
+            return field.in(DSL.select(referredField).from(key.getTable()).where(referred));
+        }
+        return row(reference.getFieldsArray())
+            .in(DSL.select(key.getFieldsArray()).from(key.getTable()).where(referred));
+    }
+
+    private int deleteByIds(DSLContext writer, List<ID> ids) {
+        Field<?>[] pk = pk();
+        if (useArrayJoin(pk, ids)) {
+            return writer.deleteFrom(table).where(inArray(pk[0], ids)).execute();
+        }
+
+        int rows = 0;
+        for (List<ID> chunk : Lists.partition(ids, batchSize)) {
+            rows += writer.deleteFrom(table).where(in(pk, chunk)).execute();
+        }
+        return rows;
+    }
+
+    private boolean useArrayJoin(Field<?>[] pk, List<ID> ids) {
+        return arrayJoinThreshold > 0 && ids.size() > arrayJoinThreshold && pk.length == 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K> Condition inArray(Field<K> field, List<ID> ids) {
+        K[] values = (K[]) Array.newInstance(field.getType(), ids.size());
+        for (int i = 0; i < values.length; i++) {
+            values[i] = field.getDataType().convert(ids.get(i));
+        }
+        Table<?> array = unnest(values);
+        return field.in(select((Field<K>) array.field(0)).from(array));
+    }
+
+    private <V> V await(Future<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrupted while fetching the chunks of IDs.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new DataAccessException("Failed to fetch the chunk of IDs.", e.getCause());
+        }
+    }
+
+    private void merge(List<R> records, List<Field<?>> columns, Field<?>[] key) {
+        if (records.isEmpty()) {
+            return;
+        }
+        Field<? extends Number> version = table.getRecordVersion();
+        List<Field<?>> fields = new ArrayList<>(columns);
+        List<Object> values = columns.stream()
+            .map(field -> param(field.getName(), field.getDataType()))
+            .collect(Collectors.toList());
+        // The fields of which values are bound in the order of the bind variables.
+        List<Field<?>> binds = new ArrayList<>(columns);
+        Query query;
+        switch (dsl.configuration().dialect().family()) {
+            case MARIADB:
+            case MYSQL:
+                Map<Field<?>, Field<?>> updates = new HashMap<>();
+                columns.stream()
+                    .filter(field -> !Arrays.asList(key).contains(field))
+                    .forEach(field -> updates.put(field, field("values({0})", field.getDataType(), field)));
+                if (version != null) {
+                    // An inserted row starts at the same version as by store().
+                    fields.add(version);
+                    values.add(inline(1));
+                    updates.put(version, version.add(inline(1)));
+                }
+                query = dsl.insertInto(table, fields).values(values).onDuplicateKeyUpdate().set(updates);
+                break;
+            default:
+                if (version != null) {
+                    // MERGE has no update branch of its own, so that the next version is read from the matched row,
+                    // and an inserted row starts at the same version as by store().
+                    Field<?>[] keyParams = Arrays.stream(key)
+                        .map(field -> param("key_" + field.getName(), field.getDataType()))
+                        .toArray(Field[]::new);
+                    fields.add(version);
+                    values.add(DSL.select(coalesce(max(version).add(inline(1)), inline(1)))
+                        .from(table)
+                        .where(row(key).equal(row(keyParams)))
+                        .asField());
+                    binds.addAll(Arrays.asList(key));
+                }
+                query = dsl.mergeInto(table, fields).key(key).values(values);
+                break;
+        }
+
+        for (List<R> chunk : Lists.partition(records, batchSize)) {
+            BatchBindStep batch = dsl.batch(query);
+            for (R record : chunk) {
+                batch.bind(binds.stream().map(record::getValue).toArray());
+            }
+            batch.execute();
+        }
+    }
+
+    private Map<Object, R> fetchByUpsertKey(List<R> records, Field<?>[] key) {
+        Map<Object, R> matched = new HashMap<>();
+        for (List<R> chunk : Lists.partition(records, batchSize)) {
+            Condition condition = falseCondition();
+            for (R record : chunk) {
+                condition = condition.or(row(key).equal(record.into(key).intoArray()));
+            }
+            dsl.selectFrom(table).where(condition).fetch()
+                .forEach(record -> matched.put(Arrays.asList(record.into(key).intoArray()), record));
+        }
+        return matched;
+    }
+
+    private void insertWithGeneratedKeys(List<R> records) {
+        Field<?>[] pk = pk();
+        if (records.isEmpty()) {
+            return;
+        }
+        if (pk.length != 1) {
+            records.forEach(R::store);
+            return;
+        }
+
+        Field<?> identity = pk[0];
+        List<Field<?>> columns = Arrays.stream(table.fields())
+            .filter(field -> !field.equals(identity))
+            .collect(Collectors.toList());
+        for (List<R> chunk : Lists.partition(records, batchSize)) {
+            chunk.forEach(this::initVersion);
+            if (supportsBatchGeneratedKeys()) {
+                insertReturning(chunk, columns, identity);
+            } else {
+                // The identities are drawn from the sequence in advance, and inserted as the other columns.
+                assignIdentities(chunk, identity);
+                dsl.batchInsert(chunk).execute();
+            }
+        }
+    }
+
+    /**
+     * Sets the initial version to the record which is inserted without {@link UpdatableRecord#store()}.
+     */
+    @SuppressWarnings("unchecked")
+    private void initVersion(R record) {
+        Field<Object> version = (Field<Object>) table.getRecordVersion();
+        if (version != null && record.getValue(version) == null) {
+            record.setValue(version, version.getDataType().convert(1));
+        }
+    }
+
+    /**
+     * Inserts the records by a multi-row {@code INSERT}, and sets the returned identities to them.
+     */
+    private <K> void insertReturning(List<R> records, List<Field<?>> columns, Field<K> identity) {
+        InsertValuesStepN<R> insert = dsl.insertInto(table, columns);
+        for (R record : records) {
+            insert = insert.values(columns.stream().map(record::getValue).collect(Collectors.toList()));
+        }
+        Result<R> keys = insert.returning(identity).fetch();
+        if (keys.size() < records.size()) {
+            throw new DataAccessException("The generated keys are fewer than the inserted rows.");
+        }
+        for (int i = 0; i < records.size(); i++) {
+            records.get(i).setValue(identity, keys.get(i).getValue(identity));
+        }
+    }
+
+    /**
+     * Sets the next values of the sequence of the identity column to the records, which are read by a query.
+     */
+    private <K> void assignIdentities(List<R> records, Field<K> identity) {
+        List<K> keys = dsl
+            .select(identitySequence(identity).nextval())
+            .from(generateSeries(1, records.size()))
+            .fetch(0, identity.getType());
+        for (int i = 0; i < records.size(); i++) {
+            records.get(i).setValue(identity, keys.get(i));
+        }
+    }
+
+    private Sequence<Long> identitySequence(Field<?> identity) {
+        Sequence<Long> sequence = this.identitySequence;
+        if (sequence == null) {
+            Condition column = field(name("TABLE_NAME")).equal(table.getName())
+                .and(field(name("COLUMN_NAME")).equal(identity.getName()));
+            if (table.getSchema() != null) {
+                column = column.and(field(name("TABLE_SCHEMA")).equal(table.getSchema().getName()));
+            }
+            String name = dsl
+                .select(field(name("SEQUENCE_NAME"), String.class))
+                .from(DSL.table(name("INFORMATION_SCHEMA", "COLUMNS")))
+                .where(column)
+                .fetchOne(0, String.class);
+            Assert.state(name != null, identity.getName() + " of " + table.getName() + " has no sequence.");
+            sequence = table.getSchema() == null
+                ? sequence(name(name), Long.class)
+                : sequence(name(table.getSchema().getName(), name), Long.class);
+            this.identitySequence = sequence;
+        }
+        return sequence;
+    }
+
     private R fetchById(ID id) {
         Field<?>[] pk = pk();
         R record = null;
 
         if (pk != null) {
-            record = dsl
-                .selectFrom(table)
-                .where(equal(pk, id))
-                .fetchOne();
+            record = queries.findOne(keyValues(id));
         }
 
-        return record == null ? null : record;
+        return record;
     }
 
-    private SelectQuery<R> getQuery(Sort sort) {
-        SelectQuery<R> query = dsl.selectFrom(table).getQuery();
+    private FixedShapeQueries<R> queries(DSLContext reader) {
+        return reader == dsl ? queries : replicaQueries;
+    }
+
+    private SelectQuery<R> getQuery(DSLContext reader, Sort sort) {
+        SelectQuery<R> query = reader.selectFrom(table).getQuery();
+        query.addOrderBy(orderBy(sort));
+        return query;
+    }
+
+    /**
+     * Returns the columns of this table which are sorted by the given sort.
+     *
+     * @param sort the sort condition, may be {@code null}
+     * @return the sort fields
+     */
+    protected List<SortField<?>> orderBy(Sort sort) {
+        checkSort(sort);
+        return sortFields(sort);
+    }
+
+    private List<SortField<?>> sortFields(Sort sort) {
+        List<SortField<?>> orderBy = new ArrayList<>();
         // Do not sort if specified sort condition.
         if (sort == null) {
-            return query;
+            return orderBy;
         }
         for (Sort.Order order : sort) {
-            // It's currently only allowed column name of lowercase.
-            Field<?> field = table.field(name(LOWER_CAMEL.to(LOWER_UNDERSCORE, order.getProperty())));
-            if (field == null) {
-                // TODO Consider later that can't find the field which has sort condition.
-                continue;
+            Field<?> field = sortColumn(order);
+            if (field != null) {
+                orderBy.add(sortField(field, order.getDirection()));
             }
-            SortField<?> sortField;
-            if (order.getDirection() == Sort.Direction.ASC) {
-                sortField = field.asc();
-            } else {
-                sortField = field.desc();
+        }
+        return orderBy;
+    }
+
+    private void checkSort(Sort sort) {
+        if (sort == null || indexPolicy == IndexPolicy.IGNORE) {
+            return;
+        }
+        boolean first = true;
+        for (Sort.Order order : sort) {
+            Field<?> field = sortColumn(order);
+            if (field == null) {
+                unindexed("The property " + order.getProperty() + " is not a column of " + table.getName() + ".");
+            } else if (first && !indexed.contains(field)) {
+                // Only the first column needs an index to avoid sorting all rows.
+                unindexed("The sort by " + field.getName() + " does not use an index of " + table.getName() + ".");
             }
-            query.addOrderBy(sortField);
+            first = false;
+        }
+    }
+
+    private Condition condition(Specification<E> spec) {
+        Assert.notNull(spec);
+        Condition condition = spec.toCondition();
+        if (indexPolicy != IndexPolicy.IGNORE && !spec.isIndexed(indexed::contains)) {
+            unindexed("The filter " + dsl.render(condition) + " does not use an index of " + table.getName() + ".");
+        }
+        return condition;
+    }
+
+    private void unindexed(String message) {
+        if (indexPolicy == IndexPolicy.REJECT) {
+            throw new IllegalArgumentException(message);
+        }
+        if (warned.add(message)) {
+            log.warn(message);
         }
+    }
+
+    private long count(Condition condition) {
+        return read(reader -> reader.fetchCount(table, condition));
+    }
+
+    /**
+     * Returns the total number of entities for a page according to the {@link PagingMode} of this repository.
+     *
+     * @param pageable the paging condition
+     * @param size     the number of entities in the page
+     * @return the total number of entities
+     */
+    protected long total(Pageable pageable, int size) {
+        boolean last = size < pageable.getPageSize() && (size > 0 || pageable.getOffset() == 0);
+        if (pagingMode != PagingMode.COUNT && last) {
+            // The page is the last one, so that the total is known without counting.
+            return pageable.getOffset() + size;
+        }
+        return pagingMode == PagingMode.CACHED ? rowCount.get(this::count) : count();
+    }
+
+    private Page<E> findPageWithTotal(DSLContext reader, Pageable pageable) {
+        Field<Integer> total = (reader.configuration().dialect().family() == SQLDialect.H2
+            ? field(selectCount().from(table)) : DSL.count().over()).as("total_count");
+        SelectQuery<Record> query = reader.selectQuery();
+        query.addSelect(table.fields());
+        query.addSelect(total);
+        query.addFrom(table);
+        query.addOrderBy(orderBy(pageable.getSort()));
+        query.addLimit(pageable.getOffset(), pageable.getPageSize());
+
+        Result<Record> result = query.fetch();
+        List<E> content = result.map(record -> mapper().map(record.into(table)));
+        if (result.isEmpty()) {
+            return new PageImpl<>(content, pageable, total(pageable, 0));
+        }
+        return new PageImpl<>(content, pageable, result.get(0).getValue(total));
+    }
+
+    private Field<?> sortColumn(Sort.Order order) {
+        // It's currently only allowed column name of lowercase.
+        return table.field(name(LOWER_CAMEL.to(LOWER_UNDERSCORE, order.getProperty())));
+    }
+
+    private SortField<?> sortField(Field<?> field, Sort.Direction direction) {
+        if (direction == Sort.Direction.ASC) {
+            return field.asc();
+        } else {
+            return field.desc();
+        }
+    }
+
+    private SelectQuery<R> getQuery(DSLContext reader, Pageable pageable, Condition condition) {
+        SelectQuery<R> query = getQuery(reader, pageable);
+        query.addConditions(condition);
         return query;
     }
 
-    private SelectQuery<R> getQuery(Pageable pageable) {
-        SelectQuery<R> query = getQuery(pageable.getSort());
+    private SelectQuery<R> getQuery(DSLContext reader, Pageable pageable) {
+        SelectQuery<R> query = getQuery(reader, pageable.getSort());
         query.addLimit(pageable.getOffset(), pageable.getPageSize());
         return query;
     }
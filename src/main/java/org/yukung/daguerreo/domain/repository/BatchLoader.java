@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import com.google.common.collect.Lists;
+import org.springframework.util.Assert;
+import org.yukung.daguerreo.domain.entity.Identifiable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Loader which coalesces the lookups of the entities by ID into batches, like the DataLoader of GraphQL.
+ * <p>
+ * {@link #load(Serializable)} only enqueues the ID and returns a future, and {@link #dispatch()} loads all the
+ * enqueued IDs by a single batch function, e.g. {@link BasicJooqRepository#findAll(Iterable)}, then completes the
+ * futures. The same ID is loaded only once during the life of the loader, so a loader should be used for a unit of
+ * work such as a request. When the loader is created with a scheduler, the enqueued IDs are dispatched
+ * automatically after the window has passed since the first of them.
+ * </p>
+ *
+ * @param <E>  the type of entity
+ * @param <ID> the type of ID
+ * @author yukung
+ * @see BasicJooqRepository#batchLoader()
+ * @see BatchLoaderRegistry
+ */
+public class BatchLoader<E extends Identifiable<ID>, ID extends Serializable> {
+
+    private final Function<List<ID>, List<E>> batchFunction;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final long window;
+    private final TimeUnit unit;
+    private final Map<ID, CompletableFuture<E>> futures = new HashMap<>();
+    private final List<ID> pending = new ArrayList<>();
+    private boolean scheduled;
+
+    /**
+     * Creates a loader which is dispatched manually.
+     *
+     * @param batchFunction the function which loads the entities of the given IDs
+     * @param maxBatchSize  the maximum number of IDs which are passed to the function at a time
+     */
+    public BatchLoader(Function<List<ID>, List<E>> batchFunction, int maxBatchSize) {
+        this(batchFunction, maxBatchSize, null, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a loader which is dispatched automatically after the given window.
+     *
+     * @param batchFunction the function which loads the entities of the given IDs
+     * @param maxBatchSize  the maximum number of IDs which are passed to the function at a time
+     * @param scheduler     the scheduler which dispatches the loader, or {@code null} to dispatch it manually
+     * @param window        the time to wait for other IDs after the first ID is enqueued
+     * @param unit          the time unit of {@code window}
+     */
+    public BatchLoader(Function<List<ID>, List<E>> batchFunction, int maxBatchSize,
+                       ScheduledExecutorService scheduler, long window, TimeUnit unit) {
+        Assert.notNull(batchFunction);
+        Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive.");
+        Assert.isTrue(window >= 0, "window must not be negative.");
+        Assert.notNull(unit);
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+        this.window = window;
+        this.unit = unit;
+    }
+
+    /**
+     * Enqueues the given ID and returns the future of its entity.
+     *
+     * @param id the ID
+     * @return the future of the entity, which is completed with {@code null} if it does not exist
+     */
+    public synchronized CompletableFuture<E> load(ID id) {
+        Assert.notNull(id);
+        CompletableFuture<E> future = futures.get(id);
+        if (future == null) {
+            future = new CompletableFuture<>();
+            futures.put(id, future);
+            pending.add(id);
+            if (scheduler != null && !scheduled) {
+                scheduled = true;
+                scheduler.schedule(this::dispatch, window, unit);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Enqueues the given IDs and returns the future of their entities.
+     *
+     * @param ids the IDs
+     * @return the future of the entities in the order of the IDs, which contains {@code null} for missing ones
+     */
+    public CompletableFuture<List<E>> loadMany(Iterable<ID> ids) {
+        List<CompletableFuture<E>> loads = new ArrayList<>();
+        ids.forEach(id -> loads.add(load(id)));
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[loads.size()]))
+            .thenApply(done -> loads.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    /**
+     * Loads all the enqueued IDs in batches of the maximum size and completes their futures.
+     * <p>
+     * If the batch function fails, the futures of the batch are completed exceptionally and discarded,
+     * so that the IDs are loaded again by the next {@link #load(Serializable)}.
+     * </p>
+     */
+    public void dispatch() {
+        List<ID> ids;
+        synchronized (this) {
+            ids = new ArrayList<>(pending);
+            pending.clear();
+            scheduled = false;
+        }
+        for (List<ID> batch : Lists.partition(ids, maxBatchSize)) {
+            Map<ID, CompletableFuture<E>> targets = new LinkedHashMap<>();
+            synchronized (this) {
+                batch.forEach(id -> targets.put(id, futures.get(id)));
+            }
+            try {
+                Map<ID, E> loaded = new HashMap<>();
+                batchFunction.apply(batch).forEach(entity -> loaded.putIfAbsent(entity.getId(), entity));
+                targets.forEach((id, future) -> future.complete(loaded.get(id)));
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    futures.keySet().removeAll(targets.keySet());
+                }
+                targets.values().forEach(future -> future.completeExceptionally(e));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of IDs which are enqueued but not dispatched yet.
+     *
+     * @return the number of pending IDs
+     */
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Discards the loaded entity of the given ID, so that it is loaded again by the next {@link #load(Serializable)}.
+     *
+     * @param id the ID
+     */
+    public synchronized void clear(ID id) {
+        if (!pending.contains(id)) {
+            futures.remove(id);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.WebApplicationContext;
+import org.yukung.daguerreo.domain.entity.Identifiable;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Request scoped holder of the {@link BatchLoader}s of the repositories.
+ * <p>
+ * The handlers of a request share a loader per repository, so that the lookups which are enqueued by them are
+ * coalesced into a query per repository by {@link #dispatchAll()}.
+ * </p>
+ *
+ * @author yukung
+ */
+@Component
+@Scope(value = WebApplicationContext.SCOPE_REQUEST, proxyMode = ScopedProxyMode.TARGET_CLASS)
+public class BatchLoaderRegistry {
+
+    private final Map<Object, BatchLoader<?, ?>> loaders = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the loader of the given repository in the current request.
+     *
+     * @param repository the repository
+     * @param <E>        the type of entity
+     * @param <ID>       the type of ID
+     * @return the loader
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Identifiable<ID>, ID extends Serializable> BatchLoader<E, ID> loader(
+        BasicJooqRepository<?, ?, E, ID> repository) {
+        return (BatchLoader<E, ID>) loaders.computeIfAbsent(repository, key -> repository.batchLoader());
+    }
+
+    /**
+     * Dispatches all the loaders until no IDs are pending,
+     * including the IDs which are enqueued by the callbacks of the loaded entities.
+     */
+    public void dispatchAll() {
+        boolean dispatched;
+        do {
+            dispatched = false;
+            for (BatchLoader<?, ?> loader : loaders.values()) {
+                if (loader.pendingCount() > 0) {
+                    loader.dispatch();
+                    dispatched = true;
+                }
+            }
+        } while (dispatched);
+    }
+}
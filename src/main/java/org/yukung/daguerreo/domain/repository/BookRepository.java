@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static org.yukung.daguerreo.infrastructure.Tables.*;
+
+import org.jooq.Field;
+import org.jooq.JoinType;
+import org.jooq.Record;
+import org.jooq.RecordMapper;
+import org.jooq.Result;
+import org.jooq.SelectQuery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.Assert;
+import org.yukung.daguerreo.domain.entity.Book;
+import org.yukung.daguerreo.domain.entity.BookApi;
+import org.yukung.daguerreo.domain.entity.BookCover;
+import org.yukung.daguerreo.domain.entity.Isbn;
+import org.yukung.daguerreo.infrastructure.tables.records.BookApiRecord;
+import org.yukung.daguerreo.infrastructure.tables.records.BookCoverRecord;
+import org.yukung.daguerreo.infrastructure.tables.records.BookRecord;
+import org.yukung.daguerreo.infrastructure.tables.records.IsbnRecord;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+
+/**
+ * Repository of {@code book}.
+ * <p>
+ * The books are upserted on the unique key of the book API and the item ID,
+ * so that the items which are imported again from the book APIs are merged into the existing rows.
+ * The deletions in batch also delete the ISBNs and the covers of the books.
+ * </p>
+ *
+ * @author yukung
+ */
+@Repository
+public class BookRepository
+    extends BasicJooqRepository<BookRecord, org.yukung.daguerreo.infrastructure.tables.Book, Book, Long> {
+
+    private RecordMapper<BookApiRecord, BookApi> bookApiMapper;
+    private RecordMapper<IsbnRecord, Isbn> isbnMapper;
+    private RecordMapper<BookCoverRecord, BookCover> bookCoverMapper;
+
+    @PostConstruct
+    private void initAssociations() {
+        bookApiMapper = dsl.configuration().recordMapperProvider().provide(BOOK_API.recordType(), BookApi.class);
+        isbnMapper = dsl.configuration().recordMapperProvider().provide(ISBN.recordType(), Isbn.class);
+        bookCoverMapper = dsl.configuration().recordMapperProvider().provide(BOOK_COVER.recordType(), BookCover.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Field<?>[] upsertKey() {
+        return new Field<?>[] {BOOK.BOOK_API_ID, BOOK.ITEM_ID};
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The ISBNs and the covers of the books are deleted together.
+     * </p>
+     */
+    @Override
+    protected boolean cascadeDeletes() {
+        return true;
+    }
+
+    /**
+     * Returns a {@link Page} of books together with their book APIs, ISBNs and covers.
+     * <p>
+     * The associations are joined by a single {@code LEFT JOIN} query, and the books of the same book API share
+     * an instance of {@link BookApi}. The ISBN and the cover are {@code null} if the book does not have them.
+     * </p>
+     *
+     * @param pageable the paging condition
+     * @return the page of books with the associations
+     */
+    public Page<Book> findAllWithAssociations(Pageable pageable) {
+        Assert.notNull(pageable);
+        Result<Record> result = read(reader -> {
+            SelectQuery<Record> query = reader.selectQuery();
+            query.addSelect(BOOK.fields());
+            query.addSelect(BOOK_API.fields());
+            query.addSelect(ISBN.fields());
+            query.addSelect(BOOK_COVER.fields());
+            query.addFrom(BOOK);
+            query.addJoin(BOOK_API, JoinType.LEFT_OUTER_JOIN, BOOK_API.ID.equal(BOOK.BOOK_API_ID));
+            query.addJoin(ISBN, JoinType.LEFT_OUTER_JOIN, ISBN.BOOK_ID.equal(BOOK.ID));
+            query.addJoin(BOOK_COVER, JoinType.LEFT_OUTER_JOIN, BOOK_COVER.BOOK_ID.equal(BOOK.ID));
+            query.addOrderBy(orderBy(pageable.getSort()));
+            query.addOrderBy(BOOK.ID.asc());
+            query.addLimit(pageable.getOffset(), pageable.getPageSize());
+            return query.fetch();
+        });
+        List<Book> books = new ArrayList<>(result.size());
+        Map<Integer, BookApi> bookApis = new HashMap<>();
+        for (Record record : result) {
+            Book book = mapper().map(record.into(BOOK));
+            Integer bookApiId = record.getValue(BOOK_API.ID);
+            if (bookApiId != null) {
+                book.setBookApi(bookApis.computeIfAbsent(bookApiId, id -> bookApiMapper.map(record.into(BOOK_API))));
+            }
+            if (record.getValue(ISBN.BOOK_ID) != null) {
+                book.setIsbn(isbnMapper.map(record.into(ISBN)));
+            }
+            if (record.getValue(BOOK_COVER.BOOK_ID) != null) {
+                book.setBookCover(bookCoverMapper.map(record.into(BOOK_COVER)));
+            }
+            books.add(book);
+        }
+        return new PageImpl<>(books, pageable, total(pageable, books.size()));
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.util.Assert;
+import org.yukung.daguerreo.domain.entity.Book;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index of the title, author and publisher of the books.
+ * <p>
+ * The text is normalized by NFKC and lower-cased. The runs of Latin letters and digits are indexed as words, and
+ * the runs of Japanese characters as the bigrams of them and the last character, so that any substring of Japanese
+ * text can be found without a dictionary. Every term of a query also matches the terms which start with it, so the
+ * words being typed are found as well.
+ * </p>
+ * <p>
+ * The terms are kept in a sorted map for the prefix lookups, and each of them has the weights of the books which
+ * contain it in a primitive hash map, so that a posting takes about 20 bytes instead of a boxed entry of about 80
+ * bytes. A query is evaluated from the term with the fewest books, and the following terms are only looked up for
+ * the remaining candidates. The books are ranked by TF-IDF, where a term in the title weighs more than in the
+ * author, and in the author more than in the publisher.
+ * </p>
+ * <p>
+ * The index can be read concurrently by a read-write lock, while the updates are serialized.
+ * </p>
+ *
+ * @author yukung
+ */
+public class BookSearchIndex {
+
+    /**
+     * The maximum number of terms which a prefix of a query is expanded to.
+     */
+    public static final int MAX_EXPANSIONS = 64;
+
+    private static final float TITLE_WEIGHT = 3.0f;
+    private static final float AUTHOR_WEIGHT = 2.0f;
+    private static final float PUBLISHER_WEIGHT = 1.0f;
+    private static final float PREFIX_BOOST = 0.5f;
+
+    private static final Comparator<Hit> RANKING = Comparator
+        .comparing((Hit hit) -> hit.score).reversed()
+        .thenComparing(hit -> hit.id);
+
+    private final Lock readLock;
+    private final Lock writeLock;
+    private final NavigableMap<String, Postings> terms = new TreeMap<>();
+    private final Map<Long, Postings[]> documents = new HashMap<>();
+    private final LongFloatMap norms = new LongFloatMap();
+
+    /**
+     * Constructs an empty index.
+     */
+    public BookSearchIndex() {
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+    }
+
+    /**
+     * Adds the given book to the index, or replaces it if it has already been indexed.
+     *
+     * @param book the book which has an ID
+     */
+    public void add(Book book) {
+        Assert.notNull(book);
+        Assert.notNull(book.getId(), "The book must have an ID.");
+        long id = book.getId();
+        Map<String, Float> weights = new HashMap<>();
+        weigh(book.getTitle(), TITLE_WEIGHT, weights);
+        weigh(book.getAuthor(), AUTHOR_WEIGHT, weights);
+        weigh(book.getPublisher(), PUBLISHER_WEIGHT, weights);
+        float length = (float) weights.values().stream().mapToDouble(Float::doubleValue).sum();
+
+        writeLock.lock();
+        try {
+            removeDocument(id);
+            if (weights.isEmpty()) {
+                return;
+            }
+            Postings[] postings = new Postings[weights.size()];
+            int i = 0;
+            for (Map.Entry<String, Float> weight : weights.entrySet()) {
+                postings[i] = terms.computeIfAbsent(weight.getKey(), Postings::new);
+                postings[i++].weights.put(id, weight.getValue());
+            }
+            documents.put(id, postings);
+            norms.put(id, (float) (1 / Math.sqrt(length)));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the book of the given ID from the index.
+     *
+     * @param id the ID of the book
+     */
+    public void remove(Long id) {
+        writeLock.lock();
+        try {
+            removeDocument(id);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes all books from the index.
+     */
+    public void clear() {
+        writeLock.lock();
+        try {
+            terms.clear();
+            documents.clear();
+            norms.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of the indexed books.
+     *
+     * @return the number of books
+     */
+    public int size() {
+        readLock.lock();
+        try {
+            return documents.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a {@link Page} of the IDs of the books which match all terms of the given query, in the order of rank.
+     * <p>
+     * The books of the same score are ordered by ID.
+     * </p>
+     *
+     * @param query    the query
+     * @param pageable the paging condition, the sort of which is ignored
+     * @return the page of the IDs
+     */
+    public Page<Long> search(String query, Pageable pageable) {
+        Assert.notNull(pageable);
+        List<String> tokens = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (tokens.isEmpty()) {
+            return new PageImpl<>(Collections.emptyList(), pageable, 0);
+        }
+
+        readLock.lock();
+        try {
+            int total = documents.size();
+            List<List<Expansion>> clauses = new ArrayList<>();
+            for (String term : tokens) {
+                clauses.add(expand(term, total));
+            }
+            clauses.sort(Comparator.comparingLong(BookSearchIndex::frequency));
+
+            LongFloatMap scores = new LongFloatMap();
+            for (Expansion expansion : clauses.get(0)) {
+                expansion.postings.weights.forEach((id, weight) -> scores.add(id, weight * expansion.factor));
+            }
+            LongFloatMap candidates = scores;
+            for (List<Expansion> clause : clauses.subList(1, clauses.size())) {
+                LongFloatMap matched = new LongFloatMap(candidates.size());
+                candidates.forEach((id, score) -> {
+                    float added = 0;
+                    for (Expansion expansion : clause) {
+                        added += expansion.postings.weights.get(id) * expansion.factor;
+                    }
+                    if (added != 0) {
+                        matched.put(id, score + added);
+                    }
+                });
+                candidates = matched;
+            }
+
+            return new PageImpl<>(top(candidates, pageable), pageable, candidates.size());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Splits the given text into the terms of the index.
+     *
+     * @param text the text, may be {@code null}
+     * @return the terms in the order of appearance
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        int[] codePoints = normalized.codePoints().toArray();
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < codePoints.length) {
+            int start = i;
+            if (isJapanese(codePoints[i])) {
+                while (i < codePoints.length && isJapanese(codePoints[i])) {
+                    i++;
+                }
+                for (int j = start; j < i - 1; j++) {
+                    tokens.add(new String(codePoints, j, 2));
+                }
+                tokens.add(new String(codePoints, i - 1, 1));
+            } else if (Character.isLetterOrDigit(codePoints[i])) {
+                while (i < codePoints.length && Character.isLetterOrDigit(codePoints[i])
+                    && !isJapanese(codePoints[i])) {
+                    i++;
+                }
+                tokens.add(new String(codePoints, start, i - start));
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isJapanese(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        // The prolonged sound mark belongs to the common script, but it is a part of katakana words.
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA || codePoint == '\u30fc';
+    }
+
+    private static void weigh(String text, float weight, Map<String, Float> weights) {
+        for (String term : tokenize(text)) {
+            weights.merge(term, weight, Float::sum);
+        }
+    }
+
+    private static float idf(int frequency, int total) {
+        return (float) Math.log(1 + (double) total / frequency);
+    }
+
+    private static long frequency(List<Expansion> clause) {
+        return clause.stream().mapToLong(expansion -> expansion.postings.weights.size()).sum();
+    }
+
+    private void removeDocument(long id) {
+        Postings[] postings = documents.remove(id);
+        if (postings == null) {
+            return;
+        }
+        norms.remove(id);
+        for (Postings posting : postings) {
+            posting.weights.remove(id);
+            if (posting.weights.size() == 0) {
+                terms.remove(posting.term);
+            }
+        }
+    }
+
+    private List<Expansion> expand(String term, int total) {
+        List<Expansion> expansions = new ArrayList<>();
+        NavigableMap<String, Postings> prefixed = terms.subMap(term, true, term + Character.MAX_VALUE, false);
+        for (Postings postings : prefixed.values()) {
+            float boost = postings.term.equals(term) ? 1 : PREFIX_BOOST;
+            expansions.add(new Expansion(postings, boost * idf(postings.weights.size(), total)));
+            if (expansions.size() >= MAX_EXPANSIONS) {
+                break;
+            }
+        }
+        return expansions;
+    }
+
+    private List<Long> top(LongFloatMap scores, Pageable pageable) {
+        long limit = (long) pageable.getOffset() + pageable.getPageSize();
+        PriorityQueue<Hit> heap = new PriorityQueue<>(RANKING.reversed());
+        scores.forEach((id, score) -> {
+            heap.add(new Hit(id, score * norms.get(id)));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        });
+        List<Long> ids = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            ids.add(heap.poll().id);
+        }
+        Collections.reverse(ids);
+        return new ArrayList<>(ids.subList((int) Math.min(pageable.getOffset(), ids.size()), ids.size()));
+    }
+
+    /**
+     * Weights of the books which contain a term.
+     */
+    private static final class Postings {
+        private final String term;
+        private final LongFloatMap weights = new LongFloatMap();
+
+        private Postings(String term) {
+            this.term = term;
+        }
+    }
+
+    private static final class Expansion {
+        private final Postings postings;
+        private final float factor;
+
+        private Expansion(Postings postings, float factor) {
+            this.postings = postings;
+            this.factor = factor;
+        }
+    }
+
+    private static final class Hit {
+        private final long id;
+        private final float score;
+
+        private Hit(long id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static org.yukung.daguerreo.infrastructure.Tables.*;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.Assert;
+import org.yukung.daguerreo.domain.entity.Book;
+import org.yukung.daguerreo.metrics.RepositoryMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Repository which searches the books by the words in the title, author and publisher.
+ * <p>
+ * The books are searched on the {@link BookSearchIndex} in memory instead of {@code LIKE} queries. The index is
+ * built from the table in the background when the application context is refreshed, then kept up to date by the
+ * books which are saved or deleted through the {@link BookRepository}. The rows which are written by others, e.g. by
+ * the SQL, are found only after {@link #rebuild()}.
+ * </p>
+ * <p>
+ * A rebuild fills a new index aside while the searches read the current one, and the books saved or deleted in the
+ * meantime are applied to both of them. The new index then replaces the current one at once, so a search never
+ * sees a partially built index.
+ * </p>
+ *
+ * @author yukung
+ */
+@Repository
+public class BookSearchRepository {
+
+    private final Object rebuildLock = new Object();
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "book-search-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile BookSearchIndex index = new BookSearchIndex();
+    /**
+     * The updates which have been applied while the index is rebuilt, or {@code null} if it is not rebuilt.
+     */
+    private List<Consumer<BookSearchIndex>> pending;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired(required = false)
+    private RepositoryMetrics metrics = RepositoryMetrics.DISABLED;
+
+    @PostConstruct
+    private void init() {
+        bookRepository.addListener(new RepositoryListener<Book, Long>() {
+            @Override
+            public void saved(List<? extends Book> books) {
+                update(target -> books.stream().filter(book -> book.getId() != null).forEach(target::add));
+            }
+
+            @Override
+            public void deleted(List<Long> ids) {
+                update(target -> ids.forEach(target::remove));
+            }
+        });
+    }
+
+    @PreDestroy
+    private void destroy() {
+        rebuilder.shutdownNow();
+    }
+
+    /**
+     * Rebuilds the index in the background when the application context of this repository is refreshed, but not
+     * when its child contexts are.
+     *
+     * @param event the event
+     */
+    @EventListener
+    public void onContextRefreshed(ContextRefreshedEvent event) {
+        if (event.getApplicationContext() == applicationContext) {
+            rebuildAsync();
+        }
+    }
+
+    /**
+     * Builds the index again from all books in the table, in the background.
+     *
+     * @return the future of the number of the indexed books
+     */
+    public CompletableFuture<Integer> rebuildAsync() {
+        return CompletableFuture.supplyAsync(this::rebuild, rebuilder);
+    }
+
+    /**
+     * Builds the index again from all books in the table, and replaces the current index with it.
+     * <p>
+     * The searches read the current index until it is replaced. The rebuilds are serialized.
+     * </p>
+     *
+     * @return the number of the indexed books
+     */
+    public int rebuild() {
+        synchronized (rebuildLock) {
+            return metrics.record(BOOK, "searchRebuild", () -> {
+                BookSearchIndex rebuilt = new BookSearchIndex();
+                record(new ArrayList<>());
+                try {
+                    try (Stream<Book> books = bookRepository.streamAll(null)) {
+                        books.forEach(rebuilt::add);
+                    }
+                    replace(rebuilt);
+                } finally {
+                    record(null);
+                }
+                return rebuilt.size();
+            }, Integer::longValue);
+        }
+    }
+
+    /**
+     * Returns a {@link Page} of the books which match all words of the given query, in the order of relevance.
+     * <p>
+     * The words match the words in the books which start with them, and Japanese text matches any part of the
+     * text. See {@link BookSearchIndex} for the ranking. The books of the hits are read from the primary, as the
+     * index already has the books which may not have reached the read replica yet.
+     * </p>
+     *
+     * @param query    the query
+     * @param pageable the paging condition, the sort of which is ignored
+     * @return the page of the books
+     */
+    public Page<Book> search(String query, Pageable pageable) {
+        Assert.notNull(pageable);
+        return metrics.record(BOOK, "search", () -> {
+            Page<Long> hits = index.search(query, pageable);
+            if (!hits.hasContent()) {
+                return new PageImpl<>(Collections.<Book>emptyList(), pageable, hits.getTotalElements());
+            }
+            // The index is updated as soon as the books are saved, which the replica may not have received yet.
+            List<Book> content = ReadRouting.primary(() -> bookRepository.findAll(hits.getContent()));
+            // The books deleted after the search are not counted either.
+            long missing = hits.getNumberOfElements() - content.size();
+            return new PageImpl<>(content, pageable, hits.getTotalElements() - missing);
+        }, Page::getNumberOfElements);
+    }
+
+    /**
+     * Returns the number of the indexed books.
+     *
+     * @return the number of books
+     */
+    public int indexedCount() {
+        return index.size();
+    }
+
+    /**
+     * Applies the given update to the current index, and records it for the index being rebuilt.
+     */
+    private synchronized void update(Consumer<BookSearchIndex> update) {
+        update.accept(index);
+        if (pending != null) {
+            pending.add(update);
+        }
+    }
+
+    private synchronized void record(List<Consumer<BookSearchIndex>> updates) {
+        pending = updates;
+    }
+
+    /**
+     * Replaces the current index with the rebuilt one after applying the recorded updates to it.
+     */
+    private synchronized void replace(BookSearchIndex rebuilt) {
+        // The rows of the updates may have been read either before or after them, so they are applied again.
+        pending.forEach(update -> update.accept(rebuilt));
+        pending.clear();
+        index = rebuilt;
+    }
+}
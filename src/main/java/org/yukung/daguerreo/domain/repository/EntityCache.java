@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.yukung.daguerreo.domain.repository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.jooq.Record;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded read-through cache of the records which is held by a {@link BasicJooqRepository}.
+ * <p>
+ * The records are keyed by the primary key and evicted in the least-recently-used order
+ * when the cache exceeds its maximum size, or when the time to live has passed since they were written.
+ * The records are kept instead of the entities, so every hit is mapped to a new entity
+ * and the callers can not modify the cached state.
+ * </p>
+ *
+ * @param <R> the type of record
+ * @author yukung
+ */
+public class EntityCache<R extends Record> {
+
+    private final Cache<Object, R> cache;
+
+    /**
+     * Creates a cache with the given maximum size and time to live.
+     *
+     * @param maximumSize the maximum number of records
+     * @param timeToLive  the time to live since a record was written
+     * @param unit        the time unit of {@code timeToLive}
+     */
+    public EntityCache(long maximumSize, long timeToLive, TimeUnit unit) {
+        Assert.isTrue(maximumSize > 0, "maximumSize must be positive.");
+        Assert.isTrue(timeToLive > 0, "timeToLive must be positive.");
+        Assert.notNull(unit);
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(timeToLive, unit)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Returns the cached record of the given key.
+     *
+     * @param key the key normalized by the repository
+     * @return the record, or {@code null} if it is not cached
+     */
+    R get(Object key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Caches the given record.
+     *
+     * @param key    the key normalized by the repository
+     * @param record the record
+     */
+    void put(Object key, R record) {
+        cache.put(key, record);
+    }
+
+    /**
+     * Discards the cached record of the given key.
+     *
+     * @param key the key normalized by the repository
+     */
+    void invalidate(Object key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * Discards all cached records.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the approximate number of cached records.
+     *
+     * @return the number of cached records
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the statistics which contain the hit, miss and eviction counts.
+     *
+     * @return the statistics of this cache
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
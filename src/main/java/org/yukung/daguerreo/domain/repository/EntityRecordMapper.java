@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.yukung.daguerreo.domain.repository;
+
+import com.google.common.primitives.Primitives;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.RecordMapper;
+import org.jooq.tools.Convert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link RecordMapper} which sets the values of the record to the entity through the bound setters.
+ * <p>
+ * The columns are matched to the properties once when the mapper is created,
+ * so mapping a record is a loop of the setter calls without reflection.
+ * </p>
+ *
+ * @param <R> the type of record
+ * @param <E> the type of entity
+ * @author yukung
+ */
+public class EntityRecordMapper<R extends Record, E> implements RecordMapper<R, E> {
+
+    private final PropertyAccessors<E> accessors;
+    private final int[] indexes;
+    private final List<BiConsumer<E, Object>> setters;
+    private final Class<?>[] conversions;
+    private final boolean[] primitives;
+
+    EntityRecordMapper(PropertyAccessors<E> accessors, Field<?>[] fields) {
+        this.accessors = accessors;
+        List<Integer> matched = new ArrayList<>();
+        for (int i = 0; i < fields.length; i++) {
+            if (accessors.setter(fields[i].getName()) != null) {
+                matched.add(i);
+            }
+        }
+        this.indexes = new int[matched.size()];
+        this.setters = new ArrayList<>(matched.size());
+        this.conversions = new Class<?>[matched.size()];
+        this.primitives = new boolean[matched.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            Field<?> field = fields[matched.get(i)];
+            Class<?> type = accessors.type(field.getName());
+            indexes[i] = matched.get(i);
+            setters.add(accessors.setter(field.getName()));
+            conversions[i] = Primitives.wrap(type).isAssignableFrom(field.getType()) ? null : Primitives.wrap(type);
+            primitives[i] = type.isPrimitive();
+        }
+    }
+
+    /**
+     * Returns whether any column of the record is mapped to the entity.
+     *
+     * @return {@code true} if at least one column has a matching property
+     */
+    boolean hasMappings() {
+        return indexes.length > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public E map(R record) {
+        return map(record, accessors.newInstance());
+    }
+
+    /**
+     * Sets the values of the given record to the given entity.
+     *
+     * @param record the source record
+     * @param target the target entity
+     * @param <S>    the type of entity
+     * @return the target entity
+     */
+    public <S extends E> S map(Record record, S target) {
+        for (int i = 0; i < indexes.length; i++) {
+            Object value = record.getValue(indexes[i]);
+            if (value == null) {
+                if (primitives[i]) {
+                    continue;
+                }
+            } else if (conversions[i] != null) {
+                value = Convert.convert(value, conversions[i]);
+            }
+            setters.get(i).accept(target, value);
+        }
+        return target;
+    }
+}
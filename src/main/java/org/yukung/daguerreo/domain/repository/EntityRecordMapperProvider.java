@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.RecordMapper;
+import org.jooq.RecordMapperProvider;
+import org.jooq.RecordType;
+import org.jooq.impl.DefaultRecordMapper;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link RecordMapperProvider} which provides the {@link EntityRecordMapper} for the entity classes.
+ * <p>
+ * The constructor and the accessors of each class are bound by {@link java.lang.invoke.LambdaMetafactory}
+ * only once at the first use, so the records are mapped without reflection after that.
+ * The classes which are not beans, e.g. {@link Integer} or the interfaces, fall back to the
+ * {@link DefaultRecordMapper} of jOOQ.
+ * </p>
+ *
+ * @author yukung
+ */
+@Component
+public class EntityRecordMapperProvider implements RecordMapperProvider {
+
+    private final ConcurrentMap<Class<?>, Optional<PropertyAccessors<?>>> accessors = new ConcurrentHashMap<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R extends Record, E> RecordMapper<R, E> provide(RecordType<R> recordType, Class<? extends E> type) {
+        PropertyAccessors<E> bound = (PropertyAccessors<E>) accessors(type);
+        if (bound != null) {
+            EntityRecordMapper<R, E> mapper = new EntityRecordMapper<>(bound, recordType.fields());
+            if (mapper.hasMappings()) {
+                return mapper;
+            }
+        }
+        return new DefaultRecordMapper<>(recordType, type);
+    }
+
+    /**
+     * Provides the {@link EntityRecordUnmapper} which copies the given entity class to the given fields.
+     *
+     * @param type   the entity class
+     * @param fields the fields of the target record
+     * @param <E>    the type of entity
+     * @return the unmapper, or {@code null} if the class is not a bean
+     */
+    @SuppressWarnings("unchecked")
+    public <E> EntityRecordUnmapper<E> provideUnmapper(Class<? extends E> type, Field<?>[] fields) {
+        PropertyAccessors<E> bound = (PropertyAccessors<E>) accessors(type);
+        return bound == null ? null : new EntityRecordUnmapper<>(bound, fields);
+    }
+
+    /**
+     * Provides the {@link Projection} of the given interface or bean class on the given columns.
+     *
+     * @param type    the projection type
+     * @param columns the columns of the table
+     * @param <P>     the type of projection
+     * @return the projection
+     * @throws IllegalArgumentException if the type does not match any column
+     */
+    @SuppressWarnings("unchecked")
+    public <P> Projection<P> provideProjection(Class<P> type, Field<?>[] columns) {
+        if (type.isInterface()) {
+            return Projection.ofInterface(type, columns);
+        }
+        PropertyAccessors<P> bound = (PropertyAccessors<P>) accessors(type);
+        if (bound == null) {
+            throw new IllegalArgumentException(type.getName() + " is neither an interface nor a bean.");
+        }
+        return Projection.ofBean(bound, columns);
+    }
+
+    private PropertyAccessors<?> accessors(Class<?> type) {
+        return accessors.computeIfAbsent(type, key -> Optional.ofNullable(PropertyAccessors.of(key))).orElse(null);
+    }
+}
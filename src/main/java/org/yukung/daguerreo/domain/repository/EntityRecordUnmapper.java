@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.yukung.daguerreo.domain.repository;
+
+import com.google.common.primitives.Primitives;
+import org.jooq.Field;
+import org.jooq.Record;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Copies the properties of an entity to a record through the bound getters.
+ * <p>
+ * This replaces {@link Record#from(Object)}, which looks up the properties by reflection on every call.
+ * The values are set by {@link Record#setValue(Field, Object)}, so the fields are marked as changed
+ * in the same way as {@link Record#from(Object)} does.
+ * </p>
+ *
+ * @param <E> the type of entity
+ * @author yukung
+ */
+public class EntityRecordUnmapper<E> {
+
+    private final List<Field<Object>> fields;
+    private final List<Function<E, Object>> getters;
+    private final boolean[] conversions;
+
+    @SuppressWarnings("unchecked")
+    EntityRecordUnmapper(PropertyAccessors<E> accessors, Field<?>[] fields) {
+        this.fields = new ArrayList<>();
+        this.getters = new ArrayList<>();
+        List<Boolean> converted = new ArrayList<>();
+        for (Field<?> field : fields) {
+            Function<E, Object> getter = accessors.getter(field.getName());
+            if (getter != null) {
+                this.fields.add((Field<Object>) field);
+                this.getters.add(getter);
+                converted.add(!field.getType().isAssignableFrom(Primitives.wrap(accessors.type(field.getName()))));
+            }
+        }
+        this.conversions = new boolean[converted.size()];
+        for (int i = 0; i < conversions.length; i++) {
+            conversions[i] = converted.get(i);
+        }
+    }
+
+    /**
+     * Copies the properties of the given entity to the given record.
+     *
+     * @param entity the source entity
+     * @param record the target record
+     * @param <R>    the type of record
+     * @return the target record
+     */
+    public <R extends Record> R unmap(E entity, R record) {
+        for (int i = 0; i < getters.size(); i++) {
+            Field<Object> field = fields.get(i);
+            Object value = getters.get(i).apply(entity);
+            if (value != null && conversions[i]) {
+                value = field.getDataType().convert(value);
+            }
+            record.setValue(field, value);
+        }
+        return record;
+    }
+}
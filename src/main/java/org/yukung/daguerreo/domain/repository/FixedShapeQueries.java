@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static org.jooq.impl.DSL.*;
+
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Query;
+import org.jooq.Record1;
+import org.jooq.ResultQuery;
+import org.jooq.Table;
+import org.jooq.UpdatableRecord;
+
+/**
+ * Pre-built queries of the fixed-shape operations of a {@link BasicJooqRepository}.
+ * <p>
+ * The operations by the primary key and the count always have the same shape except the bind values, so their
+ * parameterized queries are built once per thread, as a jOOQ query is not thread-safe, and only the values of the
+ * key are bound to them on every call. No query tree is built per call, and {@code findOne} fetches straight into
+ * the record of the table. The queries are still executed by the {@link DSLContext}, so the values are converted
+ * by the data types of the fields, and the execute listeners, e.g. the translation of the exceptions, apply.
+ * </p>
+ * <p>
+ * jOOQ still renders the SQL of a query on every execution, which is cheap for a pre-built query, unless the
+ * statement is kept. The statements are not kept by {@link Query#keepStatement(boolean)}, because a kept statement
+ * belongs to the connection which prepared it, and the pool closes it when the connection is returned, i.e. after
+ * every call outside a transaction. As the SQL is the same on every call, the statement cache of the driver reuses
+ * the prepared statements instead, e.g. {@code QUERY_CACHE_SIZE} of H2, which is set in the URL of the data source,
+ * as HikariCP does not cache the statements by itself.
+ * </p>
+ *
+ * @param <R> the type of record
+ * @author yukung
+ */
+final class FixedShapeQueries<R extends UpdatableRecord<R>> {
+
+    private final DSLContext dsl;
+    private final Table<R> table;
+    private final Field<?>[] pk;
+    private final ThreadLocal<Queries> queries = ThreadLocal.withInitial(Queries::new);
+
+    FixedShapeQueries(DSLContext dsl, Table<R> table, Field<?>[] pk) {
+        this.dsl = dsl;
+        this.table = table;
+        this.pk = pk;
+    }
+
+    /**
+     * Returns the record of the given key.
+     *
+     * @param key the values of the primary key
+     * @return the record, or {@code null} if it does not exist
+     */
+    R findOne(Object[] key) {
+        return bind(queries.get().findOne, key).fetchOne();
+    }
+
+    /**
+     * Returns whether the record of the given key exists.
+     *
+     * @param key the values of the primary key
+     * @return {@code true} if the record exists
+     */
+    boolean exists(Object[] key) {
+        return bind(queries.get().exists, key).fetchOne() != null;
+    }
+
+    /**
+     * Deletes the record of the given key.
+     *
+     * @param key the values of the primary key
+     * @return the number of deleted rows
+     */
+    int delete(Object[] key) {
+        return bind(queries.get().delete, key).execute();
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows
+     */
+    long count() {
+        return queries.get().count.fetchOne(0, Long.class);
+    }
+
+    /**
+     * Binds the values of the key to the parameters of the query, which are converted by the data types of the
+     * fields of the primary key.
+     */
+    private static <Q extends Query> Q bind(Q query, Object[] key) {
+        for (int i = 0; i < key.length; i++) {
+            query.bind(i + 1, key[i]);
+        }
+        return query;
+    }
+
+    private static <T> Condition equalParam(Field<T> field) {
+        return field.equal(param(field.getName(), field.getDataType()));
+    }
+
+    /**
+     * The queries of a thread.
+     */
+    private final class Queries {
+
+        private final ResultQuery<R> findOne;
+        private final ResultQuery<Record1<Integer>> exists;
+        private final Query delete;
+        private final ResultQuery<Record1<Integer>> count;
+
+        Queries() {
+            Condition byKey = trueCondition();
+            for (Field<?> field : pk) {
+                byKey = byKey.and(equalParam(field));
+            }
+            findOne = dsl.selectFrom(table).where(byKey);
+            exists = dsl.selectOne().from(table).where(byKey);
+            delete = dsl.deleteFrom(table).where(byKey);
+            count = dsl.selectCount().from(table);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static org.jooq.impl.DSL.*;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Table;
+
+import java.sql.Timestamp;
+
+/**
+ * {@link ReplicaLagProbe} by the heartbeat table {@code replica_heartbeat}.
+ * <p>
+ * Every probe writes the current time to the primary, and reads the time which has been replicated to the replica.
+ * The heartbeat read from the replica is the one written by a previous probe, so the measured lag includes the
+ * interval of the probes, which the tolerance of the lag should be larger than.
+ * </p>
+ *
+ * @author yukung
+ */
+public class HeartbeatLagProbe implements ReplicaLagProbe {
+
+    private static final Table<Record> HEARTBEAT = table(name("replica_heartbeat"));
+    private static final Field<Integer> ID = field(name("id"), Integer.class);
+    private static final Field<Timestamp> BEAT = field(name("beat"), Timestamp.class);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long lagMillis(DSLContext primary, DSLContext replica) {
+        long now = System.currentTimeMillis();
+        primary.mergeInto(HEARTBEAT, ID, BEAT).key(ID).values(1, new Timestamp(now)).execute();
+        Timestamp beat = replica.select(BEAT).from(HEARTBEAT).where(ID.equal(1)).fetchOne(BEAT);
+        return beat == null ? Long.MAX_VALUE : Math.max(now - beat.getTime(), 0);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+/**
+ * What {@link BasicJooqRepository} does with the queries which filter or sort by the columns without an index.
+ * <p>
+ * The columns are indexed when they lead the primary key, a unique key or a foreign key of the table, which H2
+ * backs by an index, or when they are added by {@link BasicJooqRepository#indexedColumns()}.
+ * </p>
+ *
+ * @author yukung
+ */
+public enum IndexPolicy {
+
+    /**
+     * Executes the queries without checking the indexes.
+     */
+    IGNORE,
+
+    /**
+     * Logs a warning and executes the queries. The sorts by unknown properties are skipped.
+     */
+    WARN,
+
+    /**
+     * Throws {@link IllegalArgumentException} before executing the queries.
+     */
+    REJECT
+}
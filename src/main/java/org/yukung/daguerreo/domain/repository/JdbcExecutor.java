@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.springframework.util.Assert;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded {@link Executor} of the blocking JDBC operations.
+ * <p>
+ * The tasks are executed on virtual threads when the runtime supports them, otherwise on a fixed pool of daemon
+ * threads. In both cases at most the given number of tasks run at the same time, which should be the size of the
+ * connection pool, so that the tasks never wait for a connection while holding a thread.
+ * </p>
+ *
+ * @author yukung
+ */
+public final class JdbcExecutor implements Executor, AutoCloseable {
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+
+    private JdbcExecutor(ExecutorService delegate, Semaphore permits) {
+        this.delegate = delegate;
+        this.permits = permits;
+    }
+
+    /**
+     * Creates an executor which runs at most the given number of tasks at the same time.
+     *
+     * @param concurrency the maximum number of running tasks, must be positive
+     * @return the executor
+     */
+    public static JdbcExecutor create(int concurrency) {
+        Assert.isTrue(concurrency > 0, "concurrency must be positive.");
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            // Virtual threads are cheap to block, so that the tasks wait for the permits on their own threads.
+            return new JdbcExecutor(virtual, new Semaphore(concurrency));
+        }
+        AtomicInteger sequence = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "jdbc-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return new JdbcExecutor(pool, null);
+    }
+
+    /**
+     * Returns whether the tasks are executed on virtual threads.
+     *
+     * @return {@code true} if the runtime supports virtual threads
+     */
+    public boolean isVirtual() {
+        return permits != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (permits == null) {
+            delegate.execute(command);
+            return;
+        }
+        delegate.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                command.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Shuts down the executor after the submitted tasks.
+     */
+    @Override
+    public void close() {
+        delegate.shutdown();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Java 20 or earlier
+            return null;
+        }
+    }
+}
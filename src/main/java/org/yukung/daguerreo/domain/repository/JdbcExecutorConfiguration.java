@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Configuration of the {@link JdbcExecutor} of the asynchronous repositories.
+ * <p>
+ * The concurrency is the maximum size of the connection pool by default,
+ * and can be overridden by {@code repository.async.concurrency}.
+ * </p>
+ *
+ * @author yukung
+ */
+@Configuration
+public class JdbcExecutorConfiguration {
+
+    @Bean
+    public JdbcExecutor jdbcExecutor(DataSource dataSource,
+                                     @Value("${repository.async.concurrency:0}") int concurrency) {
+        return JdbcExecutor.create(concurrency > 0 ? concurrency : poolSize(dataSource));
+    }
+
+    private static int poolSize(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource) {
+            return ((HikariDataSource) dataSource).getMaximumPoolSize();
+        }
+        return Runtime.getRuntime().availableProcessors() * 2;
+    }
+}
@@ -16,12 +16,19 @@
 
 package org.yukung.daguerreo.domain.repository;
 
+import org.jooq.Field;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.repository.NoRepositoryBean;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * jOOQ specific {@link org.springframework.data.repository.Repository} interface.
@@ -38,7 +45,10 @@ public interface JooqRepository<E, ID extends Serializable> extends PagingAndSor
     List<E> findAll();
 
     /**
-     * {@inheritDoc}
+     * Returns all instances of the type with the given IDs in the order of the IDs.
+     * <p>
+     * The IDs which have no instance are skipped, and the duplicated IDs return their instance only once.
+     * </p>
      */
     @Override
     List<E> findAll(Iterable<ID> ids);
@@ -49,6 +59,141 @@ public interface JooqRepository<E, ID extends Serializable> extends PagingAndSor
     @Override
     List<E> findAll(Sort sort);
 
+    /**
+     * Returns all entities which satisfy the given specification.
+     *
+     * @param spec the specification
+     * @return the entities
+     */
+    List<E> findAll(Specification<E> spec);
+
+    /**
+     * Returns a {@link Page} of entities which satisfy the given specification.
+     *
+     * @param spec     the specification
+     * @param pageable the paging condition
+     * @return the page of entities
+     */
+    Page<E> findAll(Specification<E> spec, Pageable pageable);
+
+    /**
+     * Returns the number of entities which satisfy the given specification.
+     *
+     * @param spec the specification
+     * @return the number of entities
+     */
+    long count(Specification<E> spec);
+
+    /**
+     * Returns all entities sorted by the given sort as a lazy {@link Stream}.
+     * <p>
+     * The rows are read from an open cursor and mapped one at a time, so the whole table is never materialized.
+     * The returned stream holds the cursor and must be closed, e.g. by the try-with-resources statement.
+     * </p>
+     *
+     * @param sort the sort condition, may be {@code null}
+     * @return the stream of all entities
+     */
+    Stream<E> streamAll(Sort sort);
+
+    /**
+     * Performs the given action for each entity while reading all entities from an open cursor.
+     * <p>
+     * The cursor is closed when this method returns, even if the action throws an exception.
+     * </p>
+     *
+     * @param action the action to be performed for each entity
+     */
+    void forEach(Consumer<? super E> action);
+
+    /**
+     * Returns a {@link Slice} of entities which follow the given key in the order of the given sort.
+     * <p>
+     * Unlike the offset paging of {@link #findAll(org.springframework.data.domain.Pageable)}, this seeks to the
+     * last seen row by the index, so the cost of a page does not depend on its depth and no count is executed.
+     * </p>
+     *
+     * <p>
+     * The sort values of the last seen row are read by its key. If the row has been deleted since the previous
+     * slice, the rows are sought from the key only when they are sorted by the primary key alone, otherwise an
+     * exception is thrown, as the position of the row is lost. {@link #findAllAfter(Slice)} does not depend on it.
+     * </p>
+     *
+     * @param lastSeenKey the ID of the last entity in the previous slice, or {@code null} for the first slice
+     * @param sort        the sort condition, may be {@code null}
+     * @param size        the maximum number of entities in the slice
+     * @return the slice of entities
+     * @throws org.jooq.exception.DataAccessException if the row of {@code lastSeenKey} has been deleted and the rows
+     *                                                are not sorted by the primary key alone
+     */
+    Slice<E> findAllAfter(ID lastSeenKey, Sort sort, int size);
+
+    /**
+     * Returns the {@link Slice} of entities which follows the given slice, in its sort and of its size.
+     * <p>
+     * Unlike {@link #findAllAfter(Serializable, Sort, int)}, the sort values are read from the last entity of the
+     * given slice instead of its row, so the paging continues even if the row has been deleted.
+     * </p>
+     *
+     * @param previous the previous slice
+     * @return the slice of entities, which is empty if the previous slice is empty
+     */
+    Slice<E> findAllAfter(Slice<E> previous);
+
+    /**
+     * Returns all entities sorted by the given sort as the given projection type.
+     * <p>
+     * Only the columns of the properties of the projection are selected, and the rows are mapped straight into it.
+     * The projection is either an interface of the getters, each of which has a column, or a bean class with the
+     * setters of the columns.
+     * </p>
+     *
+     * @param projection the projection type
+     * @param sort       the sort condition, may be {@code null}
+     * @param <P>        the type of projection
+     * @return the projections of all entities
+     */
+    <P> List<P> findAll(Class<P> projection, Sort sort);
+
+    /**
+     * Returns a {@link Page} of entities as the given projection type.
+     *
+     * @param projection the projection type
+     * @param pageable   the paging condition
+     * @param <P>        the type of projection
+     * @return the page of projections
+     * @see #findAll(Class, Sort)
+     */
+    <P> Page<P> findAll(Class<P> projection, Pageable pageable);
+
+    /**
+     * Returns all entities sorted by the given sort as a lazy {@link Stream} of the given projection type.
+     * <p>
+     * The returned stream holds the cursor and must be closed like {@link #streamAll(Sort)}.
+     * </p>
+     *
+     * @param projection the projection type
+     * @param sort       the sort condition, may be {@code null}
+     * @param <P>        the type of projection
+     * @return the stream of projections
+     * @see #findAll(Class, Sort)
+     */
+    <P> Stream<P> streamAll(Class<P> projection, Sort sort);
+
+    /**
+     * Returns a {@link Slice} of entities which follow the given key as the given projection type.
+     *
+     * @param projection  the projection type
+     * @param lastSeenKey the ID of the last entity in the previous slice, or {@code null} for the first slice
+     * @param sort        the sort condition, may be {@code null}
+     * @param size        the maximum number of entities in the slice
+     * @param <P>         the type of projection
+     * @return the slice of projections
+     * @see #findAllAfter(Serializable, Sort, int)
+     * @see #findAll(Class, Sort)
+     */
+    <P> Slice<P> findAllAfter(Class<P> projection, ID lastSeenKey, Sort sort, int size);
+
     /**
      * {@inheritDoc}
      */
@@ -79,6 +224,36 @@ public interface JooqRepository<E, ID extends Serializable> extends PagingAndSor
     @Override
     <S extends E> Iterable<S> save(Iterable<S> entities);
 
+    /**
+     * Inserts or updates the given entity by a single {@code MERGE} statement without reading the row first.
+     * <p>
+     * The row is matched by the upsert key of the repository, which is the primary key by default.
+     * </p>
+     *
+     * @param entity the entity to be saved
+     * @param <S>    the type of entity
+     * @return the saved entity
+     */
+    <S extends E> S upsert(S entity);
+
+    /**
+     * Inserts or updates the given entities by batches of a single {@code MERGE} statement.
+     *
+     * @param entities the entities to be saved
+     * @param <S>      the type of entity
+     * @return the saved entities
+     */
+    <S extends E> Iterable<S> upsert(Iterable<S> entities);
+
+    /**
+     * Updates the given columns of the entity of the given ID by a single {@code UPDATE} without reading the row.
+     *
+     * @param id     the ID of the entity
+     * @param values the new values of the columns, which may also be the expressions, e.g. {@code PRICE.add(100)}
+     * @return the number of updated rows, which is {@code 0} if the entity does not exist
+     */
+    int patch(ID id, Map<? extends Field<?>, ?> values);
+
     /**
      * {@inheritDoc}
      */
@@ -98,9 +273,24 @@ public interface JooqRepository<E, ID extends Serializable> extends PagingAndSor
     void delete(Iterable<? extends E> entities);
 
     /**
-     * Deletes the given entities in a batch which means it will create a single {@link org.jooq.DeleteQuery}.
+     * Deletes the given entities by their IDs in chunks, each of which is deleted by a single
+     * {@code DELETE ... WHERE id IN (...)} in a transaction of its own, or in a nested one within the current
+     * transaction.
+     * <p>
+     * A chunk is never deleted partially, while the chunks deleted before a failure remain deleted. The deletion does
+     * not cascade, so it fails if any row refers to the entities by a foreign key.
+     * </p>
      *
      * @param entities targets of deletion.
      */
     void deleteInBatch(Iterable<E> entities);
+
+    /**
+     * Deletes the entities of the given IDs in chunks of {@code DELETE} statements without reading or building the
+     * entities.
+     *
+     * @param ids the IDs of the entities to be deleted
+     * @return the number of deleted rows
+     */
+    int deleteAllByIdInBatch(Iterable<ID> ids);
 }
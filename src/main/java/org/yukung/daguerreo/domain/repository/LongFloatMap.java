@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from {@code long} to {@code float}, which keeps the entries in primitive arrays instead of boxing them.
+ * <p>
+ * The entries are kept by the linear probing in the arrays of a power of two length, and the removals shift the
+ * following entries back instead of leaving tombstones. A missing key has the value {@code 0}, so {@code 0} can not
+ * be stored as a value. The map is not thread-safe.
+ * </p>
+ *
+ * @author yukung
+ */
+final class LongFloatMap {
+
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] keys;
+    private float[] values;
+    private int size;
+
+    LongFloatMap() {
+        this(0);
+    }
+
+    /**
+     * Constructs a map which holds the given number of entries without resizing.
+     *
+     * @param expectedSize the expected number of entries
+     */
+    LongFloatMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 2 < expectedSize * 3) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new float[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of the given key, or {@code 0} if the key is missing.
+     */
+    float get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Associates the given value with the given key, or removes the key if the value is {@code 0}.
+     */
+    void put(long key, float value) {
+        if (value == 0) {
+            remove(key);
+            return;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != 0) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 3 >= keys.length * 2) {
+            resize(keys.length << 1);
+        }
+    }
+
+    /**
+     * Adds the given value to the value of the given key.
+     */
+    void add(long key, float value) {
+        put(key, get(key) + value);
+    }
+
+    void remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != key) {
+            if (values[i] == 0) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        if (values[i] == 0) {
+            return;
+        }
+        size--;
+        for (int j = (i + 1) & mask; values[j] != 0; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            // The entry is moved back unless its home slot is between the removed slot and it.
+            boolean between = i < j ? i < home && home <= j : i < home || home <= j;
+            if (!between) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        values[i] = 0;
+    }
+
+    void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    void forEach(EntryConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != 0) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        float[] oldValues = values;
+        keys = new long[capacity];
+        values = new float[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != 0) {
+                int j = slot(oldKeys[i], mask);
+                while (values[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    /**
+     * Consumer of the entries of a {@link LongFloatMap}.
+     */
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long key, float value);
+    }
+}
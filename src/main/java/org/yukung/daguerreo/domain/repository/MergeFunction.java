@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+/**
+ * Function which resolves the conflict of the optimistic lock in {@link BasicJooqRepository#save(Identifiable)}.
+ *
+ * @param <E> the type of entity
+ * @author yukung
+ */
+@FunctionalInterface
+public interface MergeFunction<E> {
+
+    /**
+     * Merges the entity which failed to be saved into the current state of the row.
+     * <p>
+     * The version of the returned entity is replaced by the current version before saving it again.
+     * </p>
+     *
+     * @param current   the entity of the current row
+     * @param attempted the entity which failed to be saved
+     * @return the merged entity to be saved
+     */
+    E merge(E current, E attempted);
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+/**
+ * How {@link BasicJooqRepository#findAll(org.springframework.data.domain.Pageable)} obtains the total number of
+ * entities of the page.
+ *
+ * @author yukung
+ */
+public enum PagingMode {
+
+    /**
+     * Executes {@code SELECT COUNT(*)} for every page.
+     */
+    COUNT,
+
+    /**
+     * Derives the total from the page when it is the first or the last page, otherwise executes
+     * {@code SELECT COUNT(*)}. The total is always exact.
+     */
+    DERIVED,
+
+    /**
+     * Selects the total along with the rows by {@code COUNT(*) OVER()} in a single query.
+     * The dialects without the window functions, e.g. H2, select it by a scalar subquery instead.
+     */
+    WINDOW,
+
+    /**
+     * Derives the total like {@link #DERIVED}, otherwise serves an approximate total from the {@link RowCountCache}
+     * of the repository which is refreshed periodically.
+     */
+    CACHED
+}
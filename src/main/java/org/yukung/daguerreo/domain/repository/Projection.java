@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static com.google.common.base.CaseFormat.*;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.RecordMapper;
+import org.jooq.tools.Convert;
+
+import java.beans.Introspector;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Mapping of the rows to a projection type which selects only the columns of the properties of the type.
+ * <p>
+ * A bean class receives the columns of its writable properties through the bound setters of
+ * {@link EntityRecordMapper}. An interface is implemented by a proxy which holds the values of the columns of its
+ * getters, and every getter must have a column. The values are mapped straight from the selected record, so the
+ * other columns are neither transferred nor mapped.
+ * </p>
+ *
+ * @param <P> the type of projection
+ * @author yukung
+ */
+public final class Projection<P> implements RecordMapper<Record, P> {
+
+    private final Class<P> type;
+    private final Field<?>[] fields;
+    private final RecordMapper<Record, P> mapper;
+
+    private Projection(Class<P> type, Field<?>[] fields, RecordMapper<Record, P> mapper) {
+        this.type = type;
+        this.fields = fields;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Creates the projection of the given bean class.
+     *
+     * @param accessors the accessors of the bean class
+     * @param columns   the columns of the table
+     * @param <P>       the type of projection
+     * @return the projection
+     */
+    static <P> Projection<P> ofBean(PropertyAccessors<P> accessors, Field<?>[] columns) {
+        Field<?>[] fields = Arrays.stream(columns)
+            .filter(field -> accessors.setter(field.getName()) != null)
+            .toArray(Field<?>[]::new);
+        if (fields.length == 0) {
+            throw new IllegalArgumentException(accessors.type().getName() + " has no property of the columns.");
+        }
+        return new Projection<>(accessors.type(), fields, new EntityRecordMapper<>(accessors, fields));
+    }
+
+    /**
+     * Creates the projection of the given interface.
+     *
+     * @param type    the interface
+     * @param columns the columns of the table
+     * @param <P>     the type of projection
+     * @return the projection
+     */
+    static <P> Projection<P> ofInterface(Class<P> type, Field<?>[] columns) {
+        Map<String, Field<?>> byName = new HashMap<>();
+        for (Field<?> column : columns) {
+            byName.put(column.getName().toLowerCase(), column);
+        }
+        List<Field<?>> fields = new ArrayList<>();
+        Map<Method, Integer> indexes = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            if (method.isDefault()) {
+                throw new IllegalArgumentException(method + " is a default method, which is not supported.");
+            }
+            String property = property(method);
+            Field<?> field = property == null ? null : byName.get(property);
+            if (field == null) {
+                throw new IllegalArgumentException(method + " is not a getter of a column.");
+            }
+            if (!fields.contains(field)) {
+                fields.add(field);
+            }
+            indexes.put(method, fields.indexOf(field));
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException(type.getName() + " has no getter of the columns.");
+        }
+        Constructor<?> constructor;
+        try {
+            constructor = Proxy.getProxyClass(type.getClassLoader(), type).getConstructor(InvocationHandler.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Failed to create the proxy class of " + type.getName(), e);
+        }
+        return new Projection<>(type, fields.toArray(new Field<?>[fields.size()]), record -> {
+            try {
+                return type.cast(constructor.newInstance(new ValueHandler(type, indexes, record.intoArray())));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to create the proxy of " + type.getName(), e);
+            }
+        });
+    }
+
+    /**
+     * Returns the projection type.
+     *
+     * @return the projection type
+     */
+    public Class<P> type() {
+        return type;
+    }
+
+    /**
+     * Returns the columns to be selected.
+     *
+     * @return the columns in the order of the record which is mapped
+     */
+    public Field<?>[] fields() {
+        return fields.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public P map(Record record) {
+        return mapper.map(record);
+    }
+
+    private static String property(Method method) {
+        String name = method.getName();
+        if (method.getParameterCount() != 0 || method.getReturnType() == void.class) {
+            return null;
+        }
+        String property;
+        if (name.startsWith("get") && name.length() > 3) {
+            property = name.substring(3);
+        } else if (name.startsWith("is") && name.length() > 2 && method.getReturnType() == boolean.class) {
+            property = name.substring(2);
+        } else {
+            return null;
+        }
+        return LOWER_CAMEL.to(LOWER_UNDERSCORE, Introspector.decapitalize(property));
+    }
+
+    private static final class ValueHandler implements InvocationHandler {
+        private final Class<?> type;
+        private final Map<Method, Integer> indexes;
+        private final Object[] values;
+
+        private ValueHandler(Class<?> type, Map<Method, Integer> indexes, Object[] values) {
+            this.type = type;
+            this.indexes = indexes;
+            this.values = values;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Integer index = indexes.get(method);
+            if (index != null) {
+                // The null of a primitive getter is converted to the default value.
+                return Convert.convert(values[index], method.getReturnType());
+            }
+            switch (method.getName()) {
+                case "equals":
+                    return args[0] != null && Proxy.isProxyClass(args[0].getClass())
+                        && equals(Proxy.getInvocationHandler(args[0]));
+                case "hashCode":
+                    return Arrays.hashCode(values);
+                case "toString":
+                    StringJoiner joiner = new StringJoiner(", ", type.getSimpleName() + "(", ")");
+                    indexes.forEach((getter, i) -> joiner.add(getter.getName() + "=" + values[i]));
+                    return joiner.toString();
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ValueHandler && type == ((ValueHandler) other).type
+                && Arrays.equals(values, ((ValueHandler) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+    }
+}
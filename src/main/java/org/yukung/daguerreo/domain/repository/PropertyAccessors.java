@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.yukung.daguerreo.domain.repository;
+
+import static com.google.common.base.CaseFormat.*;
+
+import com.google.common.primitives.Primitives;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Constructor, getters and setters of a bean class which are bound to lambdas by {@link LambdaMetafactory}.
+ * <p>
+ * The bean class is introspected only once when the accessors are created,
+ * after that the properties are accessed by plain interface calls without reflection.
+ * The properties are keyed by the column names in lower underscore case, e.g. {@code book_api_id}.
+ * </p>
+ *
+ * @param <E> the type of bean
+ * @author yukung
+ */
+final class PropertyAccessors<E> {
+
+    private final Class<E> type;
+    private final Supplier<E> constructor;
+    private final Map<String, Function<E, Object>> getters;
+    private final Map<String, BiConsumer<E, Object>> setters;
+    private final Map<String, Class<?>> types;
+
+    private PropertyAccessors(Class<E> type, Supplier<E> constructor, Map<String, Function<E, Object>> getters,
+                              Map<String, BiConsumer<E, Object>> setters, Map<String, Class<?>> types) {
+        this.type = type;
+        this.constructor = constructor;
+        this.getters = getters;
+        this.setters = setters;
+        this.types = types;
+    }
+
+    /**
+     * Creates the accessors of the given bean class.
+     *
+     * @param type the bean class
+     * @param <E>  the type of bean
+     * @return the accessors, or {@code null} if the class is not a bean which has a public no-arg constructor
+     */
+    static <E> PropertyAccessors<E> of(Class<E> type) {
+        if (type.isPrimitive() || type.isArray() || type.isInterface() || Modifier.isAbstract(type.getModifiers())
+            || !Modifier.isPublic(type.getModifiers()) || type.getName().startsWith("java.")) {
+            return null;
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Supplier<E> constructor = constructor(lookup, type);
+            Map<String, Function<E, Object>> getters = new HashMap<>();
+            Map<String, BiConsumer<E, Object>> setters = new HashMap<>();
+            Map<String, Class<?>> types = new HashMap<>();
+            PropertyDescriptor[] descriptors = Introspector.getBeanInfo(type, Object.class).getPropertyDescriptors();
+            for (PropertyDescriptor descriptor : descriptors) {
+                String column = LOWER_CAMEL.to(LOWER_UNDERSCORE, descriptor.getName());
+                Method getter = descriptor.getReadMethod();
+                Method setter = descriptor.getWriteMethod();
+                if (getter != null) {
+                    getters.put(column, getter(lookup, type, getter));
+                }
+                if (setter != null) {
+                    setters.put(column, setter(lookup, type, setter));
+                }
+                types.put(column, descriptor.getPropertyType());
+            }
+            return new PropertyAccessors<>(type, constructor, Collections.unmodifiableMap(getters),
+                Collections.unmodifiableMap(setters), Collections.unmodifiableMap(types));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to bind the accessors of " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Returns the bean class.
+     *
+     * @return the bean class
+     */
+    Class<E> type() {
+        return type;
+    }
+
+    /**
+     * Creates a new instance of the bean.
+     *
+     * @return the new instance
+     */
+    E newInstance() {
+        return constructor.get();
+    }
+
+    /**
+     * Returns the getter of the given column.
+     *
+     * @param column the column name
+     * @return the getter, or {@code null} if the bean has no readable property for the column
+     */
+    Function<E, Object> getter(String column) {
+        return getters.get(normalize(column));
+    }
+
+    /**
+     * Returns the setter of the given column.
+     *
+     * @param column the column name
+     * @return the setter, or {@code null} if the bean has no writable property for the column
+     */
+    BiConsumer<E, Object> setter(String column) {
+        return setters.get(normalize(column));
+    }
+
+    /**
+     * Returns the property type of the given column.
+     *
+     * @param column the column name
+     * @return the property type, or {@code null} if the bean has no property for the column
+     */
+    Class<?> type(String column) {
+        return types.get(normalize(column));
+    }
+
+    private static String normalize(String column) {
+        return column.toLowerCase();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Supplier<E> constructor(MethodHandles.Lookup lookup, Class<E> type) throws Throwable {
+        MethodHandle handle = lookup.findConstructor(type, MethodType.methodType(void.class));
+        CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+            MethodType.methodType(Supplier.class),
+            MethodType.methodType(Object.class),
+            handle,
+            MethodType.methodType(type));
+        return (Supplier<E>) site.getTarget().invokeExact();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Function<E, Object> getter(MethodHandles.Lookup lookup, Class<E> type, Method method)
+        throws Throwable {
+        MethodHandle handle = lookup.unreflect(method);
+        CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+            MethodType.methodType(Function.class),
+            MethodType.methodType(Object.class, Object.class),
+            handle,
+            MethodType.methodType(Primitives.wrap(method.getReturnType()), type));
+        return (Function<E, Object>) site.getTarget().invokeExact();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> BiConsumer<E, Object> setter(MethodHandles.Lookup lookup, Class<E> type, Method method)
+        throws Throwable {
+        MethodHandle handle = lookup.unreflect(method);
+        CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+            MethodType.methodType(BiConsumer.class),
+            MethodType.methodType(void.class, Object.class, Object.class),
+            handle,
+            MethodType.methodType(void.class, type, Primitives.wrap(method.getParameterTypes()[0])));
+        return (BiConsumer<E, Object>) site.getTarget().invokeExact();
+    }
+}
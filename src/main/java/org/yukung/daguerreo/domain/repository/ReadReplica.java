@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.jooq.DSLContext;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read replica of the database to which the read operations of the repositories are routed.
+ * <p>
+ * The lag of the replica is measured by a {@link ReplicaLagProbe} in the background, so the routing does not pay
+ * for it. The replica is available only while the lag is within the tolerance, otherwise the reads fall back to
+ * the primary. A failed read on the replica makes it unavailable until the next successful probe.
+ * </p>
+ *
+ * @author yukung
+ * @see ReadRouting
+ */
+public class ReadReplica implements AutoCloseable {
+
+    private final DSLContext primary;
+    private final DSLContext replica;
+    private final ReplicaLagProbe probe;
+    private final long maxLagMillis;
+    private final AutoCloseable resource;
+    private ScheduledExecutorService scheduler;
+    private volatile long lagMillis = Long.MAX_VALUE;
+
+    /**
+     * Constructs a new read replica.
+     *
+     * @param primary      the primary
+     * @param replica      the replica
+     * @param probe        the probe of the lag
+     * @param maxLagMillis the tolerance of the lag in milliseconds
+     * @param resource     the resource which is closed with this replica, e.g. the pool, may be {@code null}
+     */
+    public ReadReplica(DSLContext primary, DSLContext replica, ReplicaLagProbe probe, long maxLagMillis,
+                       AutoCloseable resource) {
+        Assert.notNull(primary);
+        Assert.notNull(replica);
+        Assert.notNull(probe);
+        Assert.isTrue(maxLagMillis >= 0, "maxLagMillis must not be negative.");
+        this.primary = primary;
+        this.replica = replica;
+        this.probe = probe;
+        this.maxLagMillis = maxLagMillis;
+        this.resource = resource;
+    }
+
+    /**
+     * Probes the lag immediately, and then periodically in a daemon thread.
+     *
+     * @param interval the interval of the probes
+     * @param unit     the unit of the interval
+     */
+    public synchronized void start(long interval, TimeUnit unit) {
+        Assert.state(scheduler == null, "The probes have already been started.");
+        Assert.isTrue(interval > 0, "interval must be positive.");
+        probe();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::probe, interval, interval, unit);
+    }
+
+    /**
+     * Measures the lag of the replica now.
+     *
+     * @return the lag in milliseconds, or {@link Long#MAX_VALUE} if the replica cannot be probed
+     */
+    public long probe() {
+        long lag;
+        try {
+            lag = probe.lagMillis(primary, replica);
+        } catch (RuntimeException e) {
+            lag = Long.MAX_VALUE;
+        }
+        lagMillis = lag;
+        return lag;
+    }
+
+    /**
+     * Returns the {@link DSLContext} of the replica.
+     *
+     * @return the replica
+     */
+    public DSLContext dsl() {
+        return replica;
+    }
+
+    /**
+     * Returns the lag measured by the last probe.
+     *
+     * @return the lag in milliseconds, or {@link Long#MAX_VALUE} if it is unknown
+     */
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Returns whether the reads can be routed to the replica, i.e. the lag is within the tolerance.
+     *
+     * @return {@code true} if the replica is available
+     */
+    public boolean isAvailable() {
+        return lagMillis <= maxLagMillis;
+    }
+
+    /**
+     * Makes the replica unavailable until the next successful probe, e.g. after a read has failed on it.
+     */
+    public void markUnavailable() {
+        lagMillis = Long.MAX_VALUE;
+    }
+
+    /**
+     * Stops the probes and closes the resource of the replica.
+     *
+     * @throws Exception if the resource cannot be closed
+     */
+    @Override
+    public synchronized void close() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (resource != null) {
+            resource.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DataSourceConnectionProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the {@link ReadReplica}, which is enabled by {@code repository.replica.url}.
+ * <p>
+ * The pool of the replica is not registered as a {@link javax.sql.DataSource} bean, so that the primary is still
+ * the only data source of the transactions and of the migrations. The replica has the same jOOQ configuration as
+ * the primary except the connections.
+ * </p>
+ *
+ * @author yukung
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "repository.replica", name = "url")
+public class ReadReplicaConfiguration {
+
+    @Autowired(required = false)
+    private ReplicaLagProbe probe = new HeartbeatLagProbe();
+
+    @Bean(destroyMethod = "close")
+    public ReadReplica readReplica(DSLContext dsl,
+                                   @Value("${repository.replica.url}") String url,
+                                   @Value("${repository.replica.username:sa}") String username,
+                                   @Value("${repository.replica.password:}") String password,
+                                   @Value("${repository.replica.maximum-pool-size:10}") int maximumPoolSize,
+                                   @Value("${repository.replica.max-lag:1000}") long maxLagMillis,
+                                   @Value("${repository.replica.probe-interval:200}") long probeIntervalMillis) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("daguerreo-replica");
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        dataSource.setReadOnly(true);
+        DSLContext replica = DSL.using(dsl.configuration().derive(new DataSourceConnectionProvider(dataSource)));
+
+        ReadReplica readReplica = new ReadReplica(dsl, replica, probe, maxLagMillis, dataSource);
+        readReplica.start(probeIntervalMillis, TimeUnit.MILLISECONDS);
+        return readReplica;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import java.util.function.Supplier;
+
+/**
+ * Explicit routing of the read operations of the repositories between the primary and the read replica.
+ * <p>
+ * By default, the reads of {@link BasicJooqRepository} go to the replica unless they are in a read-write
+ * transaction. The routing can be overridden for the current thread, e.g. to read just written data:
+ * </p>
+ * <pre>
+ * Book book = ReadRouting.primary(() -&gt; bookRepository.findOne(id));
+ * </pre>
+ *
+ * @author yukung
+ */
+public enum ReadRouting {
+
+    /**
+     * Reads from the primary.
+     */
+    PRIMARY,
+
+    /**
+     * Reads from the replica as long as its lag is tolerable, even in a read-write transaction.
+     */
+    REPLICA;
+
+    private static final ThreadLocal<ReadRouting> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Returns the routing which is forced for the current thread.
+     *
+     * @return the routing, or {@code null} if it is not forced
+     */
+    public static ReadRouting current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Executes the given operation with the reads from the primary.
+     *
+     * @param operation the operation
+     * @param <T>       the type of result
+     * @return the result of the operation
+     */
+    public static <T> T primary(Supplier<T> operation) {
+        return PRIMARY.execute(operation);
+    }
+
+    /**
+     * Executes the given operation with the reads from the replica.
+     *
+     * @param operation the operation
+     * @param <T>       the type of result
+     * @return the result of the operation
+     */
+    public static <T> T replica(Supplier<T> operation) {
+        return REPLICA.execute(operation);
+    }
+
+    /**
+     * Executes the given operation with this routing, and restores the previous one afterwards.
+     *
+     * @param operation the operation
+     * @param <T>       the type of result
+     * @return the result of the operation
+     */
+    public <T> T execute(Supplier<T> operation) {
+        ReadRouting previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return operation.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
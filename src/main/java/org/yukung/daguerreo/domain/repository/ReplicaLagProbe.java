@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.jooq.DSLContext;
+
+/**
+ * Probe of the replication lag of a {@link ReadReplica}.
+ *
+ * @author yukung
+ * @see HeartbeatLagProbe
+ */
+@FunctionalInterface
+public interface ReplicaLagProbe {
+
+    /**
+     * Measures the lag of the replica behind the primary.
+     *
+     * @param primary the primary
+     * @param replica the replica
+     * @return the lag in milliseconds, or {@link Long#MAX_VALUE} if it is unknown
+     */
+    long lagMillis(DSLContext primary, DSLContext replica);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Listener of the entities which are saved or deleted through a {@link BasicJooqRepository}.
+ * <p>
+ * The listener is notified after the transaction has been committed, or immediately if no transaction is
+ * synchronized. The changes which are not made through the repository, e.g. by the SQL, are not notified.
+ * </p>
+ *
+ * @param <E>  the type of entity
+ * @param <ID> the type of ID
+ * @author yukung
+ */
+public interface RepositoryListener<E, ID extends Serializable> {
+
+    /**
+     * Called when the entities have been saved or upserted.
+     *
+     * @param entities the saved entities, which have the IDs of the rows
+     */
+    default void saved(List<? extends E> entities) {
+    }
+
+    /**
+     * Called when the entities have been deleted.
+     *
+     * @param ids the IDs of the deleted entities
+     */
+    default void deleted(List<ID> ids) {
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Approximate number of rows of a table which is held by a {@link BasicJooqRepository}.
+ * <p>
+ * The number is counted by the database at most once per refresh interval, and adjusted in between by the rows
+ * which are inserted or deleted through the repository. The changes which are made by others are visible only
+ * after the next refresh.
+ * </p>
+ *
+ * @author yukung
+ */
+public class RowCountCache {
+
+    private final long refreshNanos;
+    private final AtomicLong count = new AtomicLong();
+    private volatile long refreshedAt;
+    private volatile boolean valid;
+
+    /**
+     * Creates a cache with the given refresh interval.
+     *
+     * @param refreshInterval the interval to count the rows by the database
+     * @param unit            the time unit of {@code refreshInterval}
+     */
+    public RowCountCache(long refreshInterval, TimeUnit unit) {
+        Assert.isTrue(refreshInterval > 0, "refreshInterval must be positive.");
+        Assert.notNull(unit);
+        this.refreshNanos = unit.toNanos(refreshInterval);
+    }
+
+    /**
+     * Returns the approximate number of rows, which is counted by the given counter if it is stale.
+     *
+     * @param counter the counter of the rows in the database
+     * @return the number of rows
+     */
+    long get(LongSupplier counter) {
+        if (isStale()) {
+            synchronized (this) {
+                if (isStale()) {
+                    count.set(counter.getAsLong());
+                    refreshedAt = System.nanoTime();
+                    valid = true;
+                }
+            }
+        }
+        return Math.max(count.get(), 0);
+    }
+
+    /**
+     * Adjusts the number of rows by the inserted or deleted rows.
+     *
+     * @param delta the number of inserted rows, or the negative number of deleted rows
+     */
+    void add(long delta) {
+        count.addAndGet(delta);
+    }
+
+    /**
+     * Discards the number of rows, so that it is counted again on the next access.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    private boolean isStale() {
+        return !valid || System.nanoTime() - refreshedAt > refreshNanos;
+    }
+}
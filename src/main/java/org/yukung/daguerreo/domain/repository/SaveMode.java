@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+/**
+ * How {@link BasicJooqRepository#save(Identifiable)} writes the entities.
+ *
+ * @author yukung
+ */
+public enum SaveMode {
+
+    /**
+     * Reads the existing row by the ID, then inserts or updates it by the record.
+     * The optimistic lock is applied to the versioned tables.
+     */
+    STORE,
+
+    /**
+     * Writes the row by a single {@code MERGE} statement on the upsert key without reading it first.
+     * The optimistic lock is not applied, but the version column is written: an inserted row starts at the same
+     * version as by {@link #STORE}, and an updated row is incremented, so that a stale entity still fails to be
+     * stored afterwards.
+     */
+    UPSERT
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static org.jooq.impl.DSL.*;
+
+import org.jooq.Condition;
+import org.jooq.Field;
+import org.springframework.util.Assert;
+
+import java.util.Collection;
+import java.util.function.Predicate;
+
+/**
+ * Condition of the entities which is composed of the predicates over the columns of the generated tables.
+ * <p>
+ * A specification knows whether the rows which satisfy it can be found by an index, so that
+ * {@link BasicJooqRepository} can check it against the indexes of the table before executing the query.
+ * A conjunction is indexed when any of the operands is, and a disjunction when all of them are.
+ * </p>
+ * <pre>{@code
+ * Specification<Book> byBookApi = Specification.equal(BOOK.BOOK_API_ID, 1);
+ * Page<Book> books = bookRepository.findAll(byBookApi.and(Specification.startsWith(BOOK.TITLE, "Java")),
+ *     new PageRequest(0, 20));
+ * }</pre>
+ *
+ * @param <E> the type of entity
+ * @author yukung
+ */
+public interface Specification<E> {
+
+    /**
+     * Returns the condition of the {@code WHERE} clause.
+     *
+     * @return the condition
+     */
+    Condition toCondition();
+
+    /**
+     * Returns whether the rows which satisfy this specification can be found by an index.
+     *
+     * @param indexed the predicate which tests whether a column is indexed
+     * @return {@code true} if an index can be used
+     */
+    boolean isIndexed(Predicate<Field<?>> indexed);
+
+    /**
+     * Returns the conjunction of this and the given specification.
+     *
+     * @param other the other specification
+     * @return the specification which is satisfied when both are satisfied
+     */
+    default Specification<E> and(Specification<E> other) {
+        Assert.notNull(other);
+        Specification<E> self = this;
+        return new Specification<E>() {
+            @Override
+            public Condition toCondition() {
+                return self.toCondition().and(other.toCondition());
+            }
+
+            @Override
+            public boolean isIndexed(Predicate<Field<?>> indexed) {
+                return self.isIndexed(indexed) || other.isIndexed(indexed);
+            }
+        };
+    }
+
+    /**
+     * Returns the disjunction of this and the given specification.
+     *
+     * @param other the other specification
+     * @return the specification which is satisfied when either is satisfied
+     */
+    default Specification<E> or(Specification<E> other) {
+        Assert.notNull(other);
+        Specification<E> self = this;
+        return new Specification<E>() {
+            @Override
+            public Condition toCondition() {
+                return self.toCondition().or(other.toCondition());
+            }
+
+            @Override
+            public boolean isIndexed(Predicate<Field<?>> indexed) {
+                return self.isIndexed(indexed) && other.isIndexed(indexed);
+            }
+        };
+    }
+
+    /**
+     * Returns the negation of the given specification, which is never indexed.
+     *
+     * @param spec the specification
+     * @param <E>  the type of entity
+     * @return the specification which is satisfied when the given one is not
+     */
+    static <E> Specification<E> not(Specification<E> spec) {
+        Assert.notNull(spec);
+        return where(spec.toCondition().not(), false);
+    }
+
+    /**
+     * Returns the specification of the given condition on the given column.
+     * <p>
+     * It is indexed when the column is indexed, so the condition must be able to use the index of the column.
+     * </p>
+     *
+     * @param field     the column
+     * @param condition the condition on the column
+     * @param <E>       the type of entity
+     * @return the specification
+     */
+    static <E> Specification<E> where(Field<?> field, Condition condition) {
+        Assert.notNull(field);
+        Assert.notNull(condition);
+        return new Specification<E>() {
+            @Override
+            public Condition toCondition() {
+                return condition;
+            }
+
+            @Override
+            public boolean isIndexed(Predicate<Field<?>> indexed) {
+                return indexed.test(field);
+            }
+        };
+    }
+
+    /**
+     * Returns the specification of the given condition which is assumed to be indexed or not.
+     *
+     * @param condition the condition
+     * @param indexed   whether the condition can use an index
+     * @param <E>       the type of entity
+     * @return the specification
+     */
+    static <E> Specification<E> where(Condition condition, boolean indexed) {
+        Assert.notNull(condition);
+        return new Specification<E>() {
+            @Override
+            public Condition toCondition() {
+                return condition;
+            }
+
+            @Override
+            public boolean isIndexed(Predicate<Field<?>> predicate) {
+                return indexed;
+            }
+        };
+    }
+
+    /**
+     * Returns the specification of the column which is equal to the given value, or is {@code NULL} if the value is
+     * {@code null}.
+     *
+     * @param field the column
+     * @param value the value
+     * @param <E>   the type of entity
+     * @param <T>   the type of column
+     * @return the specification
+     */
+    static <E, T> Specification<E> equal(Field<T> field, T value) {
+        return where(field, value == null ? field.isNull() : field.equal(value));
+    }
+
+    /**
+     * Returns the specification of the column which is one of the given values.
+     *
+     * @param field  the column
+     * @param values the values
+     * @param <E>    the type of entity
+     * @param <T>    the type of column
+     * @return the specification
+     */
+    static <E, T> Specification<E> in(Field<T> field, Collection<? extends T> values) {
+        Assert.notNull(values);
+        return where(field, values.isEmpty() ? falseCondition() : field.in(values));
+    }
+
+    /**
+     * Returns the specification of the column which is between the given values inclusive.
+     *
+     * @param field the column
+     * @param from  the lower bound
+     * @param to    the upper bound
+     * @param <E>   the type of entity
+     * @param <T>   the type of column
+     * @return the specification
+     */
+    static <E, T> Specification<E> between(Field<T> field, T from, T to) {
+        return where(field, field.between(from, to));
+    }
+
+    /**
+     * Returns the specification of the column which is greater than or equal to the given value.
+     *
+     * @param field the column
+     * @param value the value
+     * @param <E>   the type of entity
+     * @param <T>   the type of column
+     * @return the specification
+     */
+    static <E, T> Specification<E> greaterOrEqual(Field<T> field, T value) {
+        return where(field, field.greaterOrEqual(value));
+    }
+
+    /**
+     * Returns the specification of the column which is less than the given value.
+     *
+     * @param field the column
+     * @param value the value
+     * @param <E>   the type of entity
+     * @param <T>   the type of column
+     * @return the specification
+     */
+    static <E, T> Specification<E> lessThan(Field<T> field, T value) {
+        return where(field, field.lessThan(value));
+    }
+
+    /**
+     * Returns the specification of the column which starts with the given text, which can use an index.
+     *
+     * @param field  the column
+     * @param prefix the text
+     * @param <E>    the type of entity
+     * @return the specification
+     */
+    static <E> Specification<E> startsWith(Field<String> field, String prefix) {
+        return where(field, field.startsWith(prefix));
+    }
+
+    /**
+     * Returns the specification of the column which contains the given text, which is never indexed.
+     *
+     * @param field the column
+     * @param text  the text
+     * @param <E>   the type of entity
+     * @return the specification
+     */
+    static <E> Specification<E> contains(Field<String> field, String text) {
+        return where(field.contains(text), false);
+    }
+}
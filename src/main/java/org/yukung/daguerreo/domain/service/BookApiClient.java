@@ -0,0 +1,417 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+import org.yukung.daguerreo.domain.entity.Book;
+import org.yukung.daguerreo.domain.entity.BookApi;
+import org.yukung.daguerreo.metrics.RepositoryMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * HTTP client of a book API.
+ * <p>
+ * The requests are limited by a token bucket of {@link BookApiClientSettings#getRateLimit()} per second and by
+ * {@link BookApiClientSettings#getMaxConcurrency()} concurrent requests, over a pool of keep-alive connections.
+ * The lookups of many items are batched into the multi-ID requests if the API supports them, otherwise they are sent
+ * concurrently. The connection failures and the {@code 429} and {@code 5xx} responses are retried with a jittered
+ * exponential backoff, which respects {@code Retry-After}. A response is never retried once it has been parsed, so
+ * the books are passed to the sink only once.
+ * </p>
+ * <p>
+ * With a {@link BookApiResponseCache}, the responses of the lookups are read into memory and cached by the path and
+ * the query of the request, instead of being parsed while they are read from the connection. The pages of the
+ * searches are rarely requested twice, so that they are always parsed while they are read, and are not cached.
+ * </p>
+ * <p>
+ * The requests are recorded in the {@link RepositoryMetrics} tagged by {@code bookapi.<id>}: the latency, books and
+ * errors of the {@code search} and {@code lookup} operations, the time waiting for the limits as {@code wait}, and
+ * the {@code throttled} responses and the {@code retry} attempts. The books of the responses which are read into
+ * the cache are not counted.
+ * </p>
+ *
+ * @author yukung
+ * @see BookApiClients
+ */
+public class BookApiClient implements AutoCloseable {
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final Set<Integer> RETRYABLE_STATUSES = ImmutableSet.of(SC_TOO_MANY_REQUESTS,
+        HttpStatus.SC_INTERNAL_SERVER_ERROR, HttpStatus.SC_BAD_GATEWAY, HttpStatus.SC_SERVICE_UNAVAILABLE,
+        HttpStatus.SC_GATEWAY_TIMEOUT);
+    private static final long MAX_RETRY_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final BookApi bookApi;
+    private final BookApiFormat format;
+    private final BookApiClientSettings settings;
+    private final RateLimiter rateLimiter;
+    private final Semaphore permits;
+    private final CloseableHttpClient http;
+    private final ExecutorService executor;
+    private final RepositoryMetrics metrics;
+    private final BookApiResponseCache cache;
+    private final String tag;
+
+    /**
+     * Constructs a new client.
+     *
+     * @param bookApi  the book API
+     * @param settings the settings
+     * @param metrics  the metrics to record the requests
+     */
+    public BookApiClient(BookApi bookApi, BookApiClientSettings settings, RepositoryMetrics metrics) {
+        this(bookApi, settings, metrics, null);
+    }
+
+    /**
+     * Constructs a new client which reads the responses through the given cache.
+     *
+     * @param bookApi  the book API
+     * @param settings the settings
+     * @param metrics  the metrics to record the requests
+     * @param cache    the cache of the responses, or {@code null} to stream all responses from the API
+     */
+    public BookApiClient(BookApi bookApi, BookApiClientSettings settings, RepositoryMetrics metrics,
+                         BookApiResponseCache cache) {
+        Assert.notNull(bookApi);
+        Assert.notNull(settings);
+        Assert.isTrue(settings.getRateLimit() > 0, "rateLimit must be positive.");
+        Assert.isTrue(settings.getMaxConcurrency() > 0, "maxConcurrency must be positive.");
+        Assert.isTrue(settings.getMaxAttempts() > 0, "maxAttempts must be positive.");
+        this.bookApi = bookApi;
+        this.format = BookApiFormat.of(bookApi);
+        this.settings = settings;
+        this.rateLimiter = RateLimiter.create(settings.getRateLimit());
+        this.permits = new Semaphore(settings.getMaxConcurrency(), true);
+        this.metrics = metrics == null ? RepositoryMetrics.DISABLED : metrics;
+        this.cache = cache;
+        this.tag = "bookapi." + bookApi.getId();
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(settings.getMaxConcurrency());
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxConcurrency());
+        http = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setKeepAliveStrategy((response, context) -> {
+                long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : settings.getKeepAliveMillis();
+            })
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(settings.getConnectTimeoutMillis())
+                .setSocketTimeout(settings.getReadTimeoutMillis())
+                .setConnectionRequestTimeout(settings.getReadTimeoutMillis())
+                .build())
+            .disableAutomaticRetries()
+            .build();
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(settings.getMaxConcurrency(), runnable -> {
+            Thread thread = new Thread(runnable, tag + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the book API of this client.
+     *
+     * @return the book API
+     */
+    public BookApi bookApi() {
+        return bookApi;
+    }
+
+    /**
+     * Returns the format of the book API.
+     *
+     * @return the format
+     */
+    public BookApiFormat format() {
+        return format;
+    }
+
+    /**
+     * Searches a page of the books, and passes them to the sink while the response is parsed.
+     *
+     * @param query the search query
+     * @param page  the zero-based page number
+     * @param sink  the consumer of the books
+     * @throws IOException if the request fails after the retries, or the response cannot be parsed
+     */
+    public void search(String query, int page, Consumer<Book> sink) throws IOException {
+        execute("search", format.page(bookApi, query, page), format.parser(), sink, false, false);
+    }
+
+    /**
+     * Searches a page of the books.
+     *
+     * @param query the search query
+     * @param page  the zero-based page number
+     * @return the books
+     * @throws IOException if the request fails after the retries, or the response cannot be parsed
+     */
+    public List<Book> search(String query, int page) throws IOException {
+        List<Book> books = new ArrayList<>();
+        search(query, page, books::add);
+        return books;
+    }
+
+    /**
+     * Looks up the books of the given item IDs.
+     * <p>
+     * The IDs are sent in batches of {@link BookApiFormat#lookupSize()}, and the batches are sent concurrently.
+     * The items which are not found are not returned.
+     * </p>
+     *
+     * @param itemIds the item IDs in the book API
+     * @return the books
+     * @throws IOException if any of the requests fails after the retries
+     */
+    public List<Book> lookup(Collection<String> itemIds) throws IOException {
+        Assert.notNull(itemIds);
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(itemIds));
+        List<List<String>> batches = Lists.partition(distinct, format.lookupSize());
+        if (batches.size() <= 1) {
+            return batches.isEmpty() ? new ArrayList<>() : lookupBatch(batches.get(0));
+        }
+        List<CompletableFuture<List<Book>>> futures = batches.stream()
+            .map(batch -> CompletableFuture.supplyAsync(() -> {
+                try {
+                    return lookupBatch(batch);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor))
+            .collect(Collectors.toList());
+        try {
+            return futures.stream()
+                .flatMap(future -> future.join().stream())
+                .collect(Collectors.toList());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the connections of this client.
+     *
+     * @throws IOException if the connections cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        http.close();
+    }
+
+    private List<Book> lookupBatch(List<String> itemIds) throws IOException {
+        List<Book> books = new ArrayList<>();
+        execute("lookup", format.lookup(bookApi, itemIds), format.lookupParser(), books::add, true, true);
+        return books;
+    }
+
+    private void execute(String operation, URI uri, BookParser parser, Consumer<Book> sink, boolean missingIsEmpty,
+                         boolean cacheable) throws IOException {
+        if (cache == null || !cacheable) {
+            execute(operation, uri, in -> {
+                long[] books = new long[1];
+                parser.parse(in, book -> {
+                    books[0]++;
+                    sink.accept(book);
+                });
+                return books[0];
+            }, missingIsEmpty);
+            return;
+        }
+
+        String query = uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        byte[] body = cache.get(bookApi, query, () -> {
+            // A missing item is cached as an empty body.
+            byte[][] response = {new byte[0]};
+            execute(operation, uri, in -> {
+                response[0] = StreamUtils.copyToByteArray(in);
+                return 0;
+            }, missingIsEmpty);
+            return response[0];
+        });
+        if (body.length > 0) {
+            parser.parse(new ByteArrayInputStream(body), sink);
+        }
+    }
+
+    private void execute(String operation, URI uri, ResponseHandler handler, boolean missingIsEmpty)
+        throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            acquire();
+            long retryAfter;
+            try {
+                retryAfter = send(operation, uri, handler, missingIsEmpty, attempt >= settings.getMaxAttempts());
+            } finally {
+                permits.release();
+            }
+            if (retryAfter < 0) {
+                return;
+            }
+            record("retry", 0, 1);
+            backoff(attempt, retryAfter);
+        }
+    }
+
+    private void acquire() throws IOException {
+        long start = System.nanoTime();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + tag);
+        }
+        rateLimiter.acquire();
+        record("wait", System.nanoTime() - start, 1);
+    }
+
+    /**
+     * Sends a request.
+     *
+     * @return {@code -1} if the request has completed, otherwise the delay in milliseconds which the server has
+     *     requested before the retry, or {@code 0}
+     */
+    private long send(String operation, URI uri, ResponseHandler handler, boolean missingIsEmpty, boolean last)
+        throws IOException {
+        long start = System.nanoTime();
+        CloseableHttpResponse response;
+        try {
+            response = http.execute(new HttpGet(uri));
+        } catch (IOException e) {
+            failure(operation, start);
+            if (last) {
+                throw e;
+            }
+            return 0;
+        }
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status == HttpStatus.SC_OK && entity != null) {
+                long books;
+                // Closing the content consumes the rest of it, so that the connection is reused.
+                try (InputStream in = entity.getContent()) {
+                    books = handler.handle(in);
+                } catch (IOException | RuntimeException e) {
+                    failure(operation, start);
+                    throw e;
+                }
+                record(operation, System.nanoTime() - start, books);
+                return -1;
+            }
+            EntityUtils.consumeQuietly(entity);
+            if (status == HttpStatus.SC_NOT_FOUND && missingIsEmpty) {
+                record(operation, System.nanoTime() - start, 0);
+                return -1;
+            }
+            failure(operation, start);
+            if (status == SC_TOO_MANY_REQUESTS) {
+                record("throttled", 0, 1);
+            }
+            if (last || !RETRYABLE_STATUSES.contains(status)) {
+                throw new IOException("HTTP " + status + " from " + uri);
+            }
+            return retryAfter(response.getFirstHeader("Retry-After"));
+        } finally {
+            response.close();
+        }
+    }
+
+    private void backoff(int attempt, long retryAfter) throws IOException {
+        long millis = settings.getBackoffMillis() << Math.min(attempt - 1, 16);
+        try {
+            Thread.sleep(Math.max(millis + ThreadLocalRandom.current().nextLong(millis + 1), retryAfter));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + tag);
+        }
+    }
+
+    private static long retryAfter(Header header) {
+        if (header == null) {
+            return 0;
+        }
+        try {
+            long millis = TimeUnit.SECONDS.toMillis(Long.parseLong(header.getValue().trim()));
+            return Math.min(millis, MAX_RETRY_AFTER_MILLIS);
+        } catch (NumberFormatException e) {
+            // The HTTP date is not supported.
+            return 0;
+        }
+    }
+
+    private void failure(String operation, long start) {
+        if (metrics.isEnabled()) {
+            metrics.operation(tag, operation).failure(System.nanoTime() - start);
+        }
+    }
+
+    private void record(String operation, long nanos, long count) {
+        if (metrics.isEnabled()) {
+            metrics.operation(tag, operation).success(nanos, count);
+        }
+    }
+
+    /**
+     * Handler of the body of a successful response.
+     */
+    @FunctionalInterface
+    private interface ResponseHandler {
+        long handle(InputStream in) throws IOException;
+    }
+}
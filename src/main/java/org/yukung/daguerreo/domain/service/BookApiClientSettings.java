@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import lombok.Data;
+
+/**
+ * Settings of a {@link BookApiClient}.
+ * <p>
+ * {@link BookApiClients} reads them from {@code bookapi.endpoints.<id>.*}, or from {@code bookapi.*} for all of the
+ * endpoints, e.g. {@code bookapi.endpoints.1.rate-limit=1} for the book API of ID 1.
+ * </p>
+ *
+ * @author yukung
+ */
+@Data
+public class BookApiClientSettings {
+    /**
+     * The number of requests per second, {@code rate-limit}.
+     */
+    private double rateLimit = 10;
+    /**
+     * The maximum number of concurrent requests and of the pooled connections, {@code max-concurrency}.
+     */
+    private int maxConcurrency = 4;
+    /**
+     * The number of attempts of a request including the retries, {@code max-attempts}.
+     */
+    private int maxAttempts = 3;
+    /**
+     * The base delay in milliseconds before a retry, which is doubled on every attempt and added a random jitter,
+     * {@code backoff}.
+     */
+    private long backoffMillis = 200;
+    /**
+     * The timeout in milliseconds to connect, {@code connect-timeout}.
+     */
+    private int connectTimeoutMillis = 5000;
+    /**
+     * The timeout in milliseconds to read a response and to wait for a pooled connection, {@code read-timeout}.
+     */
+    private int readTimeoutMillis = 30000;
+    /**
+     * The time in milliseconds to keep an idle connection alive unless the server specifies it, {@code keep-alive}.
+     */
+    private long keepAliveMillis = 30000;
+}
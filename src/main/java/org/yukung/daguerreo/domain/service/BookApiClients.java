@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.yukung.daguerreo.domain.entity.BookApi;
+import org.yukung.daguerreo.metrics.RepositoryMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.PreDestroy;
+
+/**
+ * Registry of the {@link BookApiClient}s, which are keyed by the ID of the book API.
+ * <p>
+ * A client is created at the first request to the book API, with the {@link BookApiClientSettings} which are read
+ * from {@code bookapi.endpoints.<id>.*} and {@code bookapi.*}. When the URL of the book API has been changed,
+ * the client is replaced by a new one. The clients read the responses through the {@link BookApiResponseCache} if it
+ * is enabled.
+ * </p>
+ *
+ * @author yukung
+ */
+@Component
+public class BookApiClients {
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired(required = false)
+    private RepositoryMetrics metrics = RepositoryMetrics.DISABLED;
+
+    @Autowired(required = false)
+    private BookApiResponseCache cache;
+
+    private final ConcurrentMap<Integer, BookApiClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the client of the given book API.
+     *
+     * @param bookApi the book API
+     * @return the client
+     */
+    public BookApiClient client(BookApi bookApi) {
+        Assert.notNull(bookApi);
+        Assert.notNull(bookApi.getId());
+        BookApiClient client = clients.get(bookApi.getId());
+        if (client != null && client.bookApi().getUrl().equals(bookApi.getUrl())) {
+            return client;
+        }
+        List<BookApiClient> replaced = new ArrayList<>(1);
+        client = clients.compute(bookApi.getId(), (id, current) -> {
+            if (current != null && current.bookApi().getUrl().equals(bookApi.getUrl())) {
+                return current;
+            }
+            if (current != null) {
+                replaced.add(current);
+            }
+            return new BookApiClient(bookApi, settings(id), metrics, cache);
+        });
+        replaced.forEach(BookApiClients::closeQuietly);
+        return client;
+    }
+
+    /**
+     * Closes all of the clients.
+     */
+    @PreDestroy
+    public void close() {
+        clients.values().forEach(BookApiClients::closeQuietly);
+        clients.clear();
+    }
+
+    private BookApiClientSettings settings(Integer id) {
+        BookApiClientSettings settings = new BookApiClientSettings();
+        settings.setRateLimit(property(id, "rate-limit", Double.class, settings.getRateLimit()));
+        settings.setMaxConcurrency(property(id, "max-concurrency", Integer.class, settings.getMaxConcurrency()));
+        settings.setMaxAttempts(property(id, "max-attempts", Integer.class, settings.getMaxAttempts()));
+        settings.setBackoffMillis(property(id, "backoff", Long.class, settings.getBackoffMillis()));
+        settings.setConnectTimeoutMillis(
+            property(id, "connect-timeout", Integer.class, settings.getConnectTimeoutMillis()));
+        settings.setReadTimeoutMillis(property(id, "read-timeout", Integer.class, settings.getReadTimeoutMillis()));
+        settings.setKeepAliveMillis(property(id, "keep-alive", Long.class, settings.getKeepAliveMillis()));
+        return settings;
+    }
+
+    private <T> T property(Integer id, String name, Class<T> type, T defaultValue) {
+        T value = environment.getProperty("bookapi." + name, type, defaultValue);
+        return environment.getProperty("bookapi.endpoints." + id + "." + name, type, value);
+    }
+
+    private static void closeQuietly(BookApiClient client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            // The connections are discarded anyway.
+        }
+    }
+}
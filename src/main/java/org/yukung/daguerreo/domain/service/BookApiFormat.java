@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import org.springframework.util.Assert;
+import org.yukung.daguerreo.domain.entity.BookApi;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Formats of the search requests and responses of the book APIs in {@code book_api}.
+ * <p>
+ * The format of a book API is determined by its URL. The query parameters of the URL, e.g. the application ID,
+ * are kept and the parameters of the search are appended to them.
+ * </p>
+ *
+ * @author yukung
+ */
+public enum BookApiFormat {
+
+    /**
+     * Google Books API, {@code /books/v1/volumes}.
+     */
+    GOOGLE_BOOKS("/books/v1/volumes", 40, 1, JsonBookParser.googleBooks(), JsonBookParser.googleVolume()) {
+        @Override
+        String parameters(String query, int page) {
+            return "q=" + encode(query) + "&startIndex=" + page * pageSize() + "&maxResults=" + pageSize();
+        }
+
+        @Override
+        public URI lookup(BookApi bookApi, List<String> itemIds) {
+            checkLookup(itemIds);
+            URI uri = URI.create(bookApi.getUrl());
+            String url = uri.getScheme() + "://" + uri.getRawAuthority() + uri.getRawPath()
+                + "/" + encode(itemIds.get(0));
+            return URI.create(uri.getRawQuery() == null ? url : url + "?" + uri.getRawQuery());
+        }
+    },
+
+    /**
+     * Rakuten Books search API, {@code /services/api/BooksBook/Search}.
+     */
+    RAKUTEN("/BooksBook/Search", 30, 1, JsonBookParser.rakuten(), JsonBookParser.rakuten()) {
+        @Override
+        String parameters(String query, int page) {
+            return "format=json&title=" + encode(query) + "&page=" + (page + 1) + "&hits=" + pageSize();
+        }
+
+        @Override
+        public URI lookup(BookApi bookApi, List<String> itemIds) {
+            checkLookup(itemIds);
+            return append(bookApi, "format=json&isbn=" + encode(itemIds.get(0)));
+        }
+    },
+
+    /**
+     * Amazon Product Advertising API, {@code /onca/xml}.
+     */
+    AMAZON("/onca/xml", 10, 10, new XmlBookParser(), new XmlBookParser()) {
+        @Override
+        String parameters(String query, int page) {
+            return "Operation=ItemSearch&SearchIndex=Books&ResponseGroup=Large&Keywords=" + encode(query)
+                + "&ItemPage=" + (page + 1);
+        }
+
+        @Override
+        public URI lookup(BookApi bookApi, List<String> itemIds) {
+            checkLookup(itemIds);
+            return append(bookApi, "Operation=ItemLookup&IdType=ASIN&ResponseGroup=Large&ItemId="
+                + itemIds.stream().map(BookApiFormat::encode).collect(Collectors.joining(",")));
+        }
+    };
+
+    private final String path;
+    private final int pageSize;
+    private final int lookupSize;
+    private final BookParser parser;
+    private final BookParser lookupParser;
+
+    BookApiFormat(String path, int pageSize, int lookupSize, BookParser parser, BookParser lookupParser) {
+        this.path = path;
+        this.pageSize = pageSize;
+        this.lookupSize = lookupSize;
+        this.parser = parser;
+        this.lookupParser = lookupParser;
+    }
+
+    /**
+     * Returns the format of the given book API.
+     *
+     * @param bookApi the book API
+     * @return the format
+     * @throws IllegalArgumentException if the format of the book API is unknown
+     */
+    public static BookApiFormat of(BookApi bookApi) {
+        Assert.notNull(bookApi);
+        String apiPath = URI.create(bookApi.getUrl()).getPath();
+        for (BookApiFormat format : values()) {
+            if (apiPath != null && apiPath.contains(format.path)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown book API: " + bookApi.getUrl());
+    }
+
+    /**
+     * Returns the number of books in a page of the search results.
+     *
+     * @return the page size
+     */
+    public int pageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns the parser of the search results.
+     *
+     * @return the parser, which is thread-safe
+     */
+    public BookParser parser() {
+        return parser;
+    }
+
+    /**
+     * Returns the URI of a page of the search results.
+     *
+     * @param bookApi the book API
+     * @param query   the search query
+     * @param page    the zero-based page number
+     * @return the URI
+     */
+    public URI page(BookApi bookApi, String query, int page) {
+        return append(bookApi, parameters(query, page));
+    }
+
+    /**
+     * Returns the maximum number of items which can be looked up by a request.
+     *
+     * @return the number of items, which is 1 if the API has no multi-ID lookup
+     */
+    public int lookupSize() {
+        return lookupSize;
+    }
+
+    /**
+     * Returns the parser of the lookup results.
+     *
+     * @return the parser, which is thread-safe
+     */
+    public BookParser lookupParser() {
+        return lookupParser;
+    }
+
+    /**
+     * Returns the URI which looks up the given items.
+     *
+     * @param bookApi the book API
+     * @param itemIds the item IDs, at most {@link #lookupSize()}
+     * @return the URI
+     */
+    public abstract URI lookup(BookApi bookApi, List<String> itemIds);
+
+    abstract String parameters(String query, int page);
+
+    void checkLookup(List<String> itemIds) {
+        Assert.notEmpty(itemIds);
+        Assert.isTrue(itemIds.size() <= lookupSize, "Too many item IDs for " + name() + ": " + itemIds.size());
+    }
+
+    private static URI append(BookApi bookApi, String parameters) {
+        String url = bookApi.getUrl();
+        return URI.create(url + (url.indexOf('?') < 0 ? '?' : '&') + parameters);
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
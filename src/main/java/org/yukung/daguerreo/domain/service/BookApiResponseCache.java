@@ -0,0 +1,285 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import static org.yukung.daguerreo.infrastructure.Tables.*;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jooq.DSLContext;
+import org.jooq.Record2;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.util.Assert;
+import org.yukung.daguerreo.domain.entity.BookApi;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Two-tier cache of the responses of the book APIs, which are keyed by {@code (book_api_id, query)}.
+ * <p>
+ * The responses are cached in a bounded in-memory tier, and in {@code book_api_response} which survives restarts.
+ * A response is fresh for the time to live, and is returned as it is. After that, it is still returned for the
+ * stale-while-revalidate period while it is loaded again in the background, so the callers do not wait for the
+ * book API. An older response is loaded again before it is returned.
+ * </p>
+ * <p>
+ * A failure of the table is not a failure of the lookup, as the table is only a cache. The hits of each tier,
+ * the stale hits and the misses are counted per book API, and published as the gauges of {@code /metrics}.
+ * </p>
+ *
+ * @author yukung
+ */
+public class BookApiResponseCache implements PublicMetrics {
+
+    /**
+     * The maximum length of the query which is cached.
+     */
+    public static final int MAX_QUERY_LENGTH = 1024;
+
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final DSLContext dsl;
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final Executor refresher;
+    private final Cache<List<Object>, Response> memory;
+    private final ConcurrentMap<List<Object>, Boolean> refreshing = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param dsl          the DSL context of {@code book_api_response}
+     * @param ttl          the time to live
+     * @param staleTime    the time in which a response is returned while it is loaded again after the time to live
+     * @param unit         the unit of the times
+     * @param maximumBytes the maximum number of bytes of the responses in memory
+     * @param refresher    the executor which loads the stale responses again
+     */
+    public BookApiResponseCache(DSLContext dsl, long ttl, long staleTime, TimeUnit unit, long maximumBytes,
+                                Executor refresher) {
+        Assert.notNull(dsl);
+        Assert.isTrue(ttl >= 0 && staleTime >= 0, "The times must not be negative.");
+        Assert.isTrue(maximumBytes > 0, "maximumBytes must be positive.");
+        Assert.notNull(refresher);
+        this.dsl = dsl;
+        this.ttlMillis = unit.toMillis(ttl);
+        this.staleMillis = unit.toMillis(staleTime);
+        this.refresher = refresher;
+        this.memory = CacheBuilder.newBuilder()
+            .maximumWeight(maximumBytes)
+            .weigher((List<Object> key, Response response) -> response.body.length + ENTRY_OVERHEAD)
+            .build();
+    }
+
+    /**
+     * Returns the response of the given query, which is loaded by the loader if it is not cached or has expired.
+     *
+     * @param bookApi the book API
+     * @param query   the query, e.g. the path and the query string of the request
+     * @param loader  the loader of the response
+     * @return the body of the response
+     * @throws IOException if the response is loaded and the loader fails
+     */
+    public byte[] get(BookApi bookApi, String query, Loader loader) throws IOException {
+        Assert.notNull(bookApi);
+        Assert.notNull(bookApi.getId());
+        Assert.notNull(query);
+        Stats counts = stats(bookApi.getId());
+        if (query.length() > MAX_QUERY_LENGTH) {
+            counts.misses.increment();
+            return loader.load();
+        }
+
+        List<Object> key = Arrays.asList(bookApi.getId(), query);
+        LongAdder hits = counts.memoryHits;
+        Response response = memory.getIfPresent(key);
+        if (response == null) {
+            hits = counts.diskHits;
+            response = read(bookApi.getId(), query);
+            if (response != null) {
+                memory.put(key, response);
+            }
+        }
+        if (response != null) {
+            long age = System.currentTimeMillis() - response.fetchedAt;
+            if (age <= ttlMillis) {
+                hits.increment();
+                return response.body;
+            }
+            if (age <= ttlMillis + staleMillis) {
+                counts.staleHits.increment();
+                refresh(key, loader);
+                return response.body;
+            }
+        }
+        counts.misses.increment();
+        return load(key, loader);
+    }
+
+    /**
+     * Discards all of the cached responses, in memory and in the table.
+     */
+    public void invalidateAll() {
+        memory.invalidateAll();
+        dsl.deleteFrom(BOOK_API_RESPONSE).execute();
+    }
+
+    /**
+     * Returns the ratio of the hits including the stale ones of the given book API.
+     *
+     * @param bookApiId the ID of the book API
+     * @return the hit ratio, or {@code 0} if there is no lookup
+     */
+    public double hitRatio(Integer bookApiId) {
+        Stats counts = stats.get(bookApiId);
+        return counts == null ? 0 : counts.hitRatio();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        for (Map.Entry<Integer, Stats> entry : stats.entrySet()) {
+            String prefix = "bookapi." + entry.getKey() + ".cache.";
+            Stats counts = entry.getValue();
+            metrics.add(new Metric<>(prefix + "hits.memory", counts.memoryHits.sum()));
+            metrics.add(new Metric<>(prefix + "hits.disk", counts.diskHits.sum()));
+            metrics.add(new Metric<>(prefix + "hits.stale", counts.staleHits.sum()));
+            metrics.add(new Metric<>(prefix + "misses", counts.misses.sum()));
+            metrics.add(new Metric<>(prefix + "hit-ratio", counts.hitRatio()));
+        }
+        return metrics;
+    }
+
+    private Stats stats(Integer bookApiId) {
+        Stats counts = stats.get(bookApiId);
+        return counts == null ? stats.computeIfAbsent(bookApiId, id -> new Stats()) : counts;
+    }
+
+    private byte[] load(List<Object> key, Loader loader) throws IOException {
+        Response response = new Response(loader.load(), System.currentTimeMillis());
+        memory.put(key, response);
+        write((Integer) key.get(0), (String) key.get(1), response);
+        return response.body;
+    }
+
+    private void refresh(List<Object> key, Loader loader) {
+        if (refreshing.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    load(key, loader);
+                } catch (IOException | RuntimeException e) {
+                    // The stale response is used until the next attempt.
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    private Response read(Integer bookApiId, String query) {
+        try {
+            Record2<byte[], Timestamp> record = dsl
+                .select(BOOK_API_RESPONSE.BODY, BOOK_API_RESPONSE.FETCHED_AT)
+                .from(BOOK_API_RESPONSE)
+                .where(BOOK_API_RESPONSE.BOOK_API_ID.equal(bookApiId))
+                .and(BOOK_API_RESPONSE.QUERY.equal(query))
+                .fetchOne();
+            return record == null ? null : new Response(record.value1(), record.value2().getTime());
+        } catch (org.jooq.exception.DataAccessException | org.springframework.dao.DataAccessException e) {
+            return null;
+        }
+    }
+
+    private void write(Integer bookApiId, String query, Response response) {
+        try {
+            dsl.mergeInto(BOOK_API_RESPONSE,
+                BOOK_API_RESPONSE.BOOK_API_ID, BOOK_API_RESPONSE.QUERY, BOOK_API_RESPONSE.BODY,
+                BOOK_API_RESPONSE.FETCHED_AT)
+                .key(BOOK_API_RESPONSE.BOOK_API_ID, BOOK_API_RESPONSE.QUERY)
+                .values(bookApiId, query, response.body, new Timestamp(response.fetchedAt))
+                .execute();
+        } catch (org.jooq.exception.DataAccessException | org.springframework.dao.DataAccessException e) {
+            // The response is still cached in memory.
+        }
+    }
+
+    /**
+     * Loader of a response.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         * Loads the response.
+         *
+         * @return the body of the response
+         * @throws IOException if the response cannot be loaded
+         */
+        byte[] load() throws IOException;
+    }
+
+    /**
+     * Cached response.
+     */
+    private static final class Response {
+        private final byte[] body;
+        private final long fetchedAt;
+
+        Response(byte[] body, long fetchedAt) {
+            this.body = body;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * Counts of the lookups of a book API.
+     */
+    private static final class Stats {
+        private final LongAdder memoryHits = new LongAdder();
+        private final LongAdder diskHits = new LongAdder();
+        private final LongAdder staleHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        double hitRatio() {
+            long hits = memoryHits.sum() + diskHits.sum() + staleHits.sum();
+            long total = hits + misses.sum();
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import org.jooq.DSLContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the {@link BookApiResponseCache}.
+ * <p>
+ * The cache is enabled by default and can be disabled by {@code bookapi.cache.enabled=false}. The time to live and
+ * the stale-while-revalidate period are configured in seconds.
+ * </p>
+ *
+ * @author yukung
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "bookapi.cache", name = "enabled", matchIfMissing = true)
+public class BookApiResponseCacheConfiguration {
+
+    private static final int REFRESH_THREADS = 2;
+
+    @Bean
+    public BookApiResponseCache bookApiResponseCache(
+        DSLContext dsl,
+        @Value("${bookapi.cache.ttl:86400}") long ttl,
+        @Value("${bookapi.cache.stale-while-revalidate:3600}") long staleWhileRevalidate,
+        @Value("${bookapi.cache.maximum-bytes:67108864}") long maximumBytes) {
+        ExecutorService refresher = Executors.newFixedThreadPool(REFRESH_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "bookapi-cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new BookApiResponseCache(dsl, ttl, staleWhileRevalidate, TimeUnit.SECONDS, maximumBytes, refresher);
+    }
+}
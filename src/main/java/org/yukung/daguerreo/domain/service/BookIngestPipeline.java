@@ -0,0 +1,378 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+import org.yukung.daguerreo.domain.entity.Book;
+import org.yukung.daguerreo.domain.entity.BookApi;
+import org.yukung.daguerreo.domain.entity.BookCover;
+import org.yukung.daguerreo.domain.entity.Isbn;
+import org.yukung.daguerreo.domain.repository.BasicJooqRepository;
+import org.yukung.daguerreo.domain.repository.BookCoverRepository;
+import org.yukung.daguerreo.domain.repository.BookRepository;
+import org.yukung.daguerreo.domain.repository.IsbnRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Pipeline which ingests the search results of a book API into {@code book}, {@code isbn} and {@code book_cover}.
+ * <p>
+ * The pages of the search results are fetched in parallel by the {@link BookApiClient} of the book API, which limits
+ * the rate and retries the failures, and each of them is parsed incrementally while it is read from the connection.
+ * The parsed books are de-duplicated on {@code (book_api_id, item_id)} and passed to the writers through a bounded
+ * queue. The writers upsert them in batches, a transaction per batch. When the writers fall behind, the queue is
+ * filled and the fetchers stop reading the connections until it has room again, so the memory is bounded by the
+ * capacity of the queue.
+ * </p>
+ * <p>
+ * The first failure of any stage aborts the ingest, and it is thrown after all stages have stopped. The batches
+ * which have been written by then are not rolled back.
+ * </p>
+ *
+ * @author yukung
+ */
+@Service
+public class BookIngestPipeline {
+
+    /**
+     * The default number of pages which are fetched and parsed concurrently.
+     */
+    public static final int DEFAULT_FETCH_CONCURRENCY = 4;
+
+    /**
+     * The default number of books which are buffered between the parsers and the writers.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /**
+     * The default number of writers.
+     */
+    public static final int DEFAULT_WRITERS = 2;
+
+    private static final long POLL_MILLIS = 100;
+    private static final int ITEM_ID_LENGTH = 32;
+    private static final int TEXT_LENGTH = 255;
+    private static final Pattern ISBN13 = Pattern.compile("\\d{13}");
+
+    @Autowired
+    private BookApiClients clients;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private IsbnRepository isbnRepository;
+
+    @Autowired
+    private BookCoverRepository bookCoverRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private int fetchConcurrency = DEFAULT_FETCH_CONCURRENCY;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int writers = DEFAULT_WRITERS;
+    private int batchSize = BasicJooqRepository.DEFAULT_BATCH_SIZE;
+
+    /**
+     * Sets the number of pages which are fetched and parsed concurrently.
+     * <p>
+     * It is configured by {@code ingest.fetch-concurrency}.
+     * </p>
+     *
+     * @param fetchConcurrency the concurrency, must be positive
+     */
+    @Autowired
+    public void setFetchConcurrency(
+        @Value("${ingest.fetch-concurrency:" + DEFAULT_FETCH_CONCURRENCY + "}") int fetchConcurrency) {
+        Assert.isTrue(fetchConcurrency > 0, "fetchConcurrency must be positive.");
+        this.fetchConcurrency = fetchConcurrency;
+    }
+
+    /**
+     * Sets the number of books which are buffered between the parsers and the writers.
+     * <p>
+     * It is configured by {@code ingest.queue-capacity}.
+     * </p>
+     *
+     * @param queueCapacity the capacity, must be positive
+     */
+    @Autowired
+    public void setQueueCapacity(@Value("${ingest.queue-capacity:" + DEFAULT_QUEUE_CAPACITY + "}") int queueCapacity) {
+        Assert.isTrue(queueCapacity > 0, "queueCapacity must be positive.");
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets the number of writers, each of which upserts a batch at a time.
+     * <p>
+     * It is configured by {@code ingest.writers}.
+     * </p>
+     *
+     * @param writers the number of writers, must be positive
+     */
+    @Autowired
+    public void setWriters(@Value("${ingest.writers:" + DEFAULT_WRITERS + "}") int writers) {
+        Assert.isTrue(writers > 0, "writers must be positive.");
+        this.writers = writers;
+    }
+
+    /**
+     * Sets the number of books which are upserted in a batch.
+     * <p>
+     * It is configured by {@code repository.batch-size}.
+     * </p>
+     *
+     * @param batchSize the batch size, must be positive
+     */
+    @Autowired
+    public void setBatchSize(
+        @Value("${repository.batch-size:" + BasicJooqRepository.DEFAULT_BATCH_SIZE + "}") int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize must be positive.");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Ingests the search results of the given book API.
+     *
+     * @param bookApi the book API
+     * @param query   the search query
+     * @param pages   the number of pages of the search results to ingest
+     * @return the result of the ingest
+     * @throws UncheckedIOException if a page cannot be fetched or parsed
+     */
+    public IngestResult ingest(BookApi bookApi, String query, int pages) {
+        Assert.notNull(bookApi);
+        Assert.notNull(bookApi.getId());
+        Assert.hasText(query);
+        Assert.isTrue(pages > 0, "pages must be positive.");
+        return new Ingest(bookApi, clients.client(bookApi)).execute(query, pages);
+    }
+
+    private void write(List<Book> books) {
+        bookRepository.upsert(books);
+        List<Isbn> isbns = new ArrayList<>();
+        List<BookCover> covers = new ArrayList<>();
+        for (Book book : books) {
+            if (book.getId() == null) {
+                continue;
+            }
+            if (book.getIsbn() != null) {
+                book.getIsbn().setBookId(book.getId());
+                isbns.add(book.getIsbn());
+            }
+            if (book.getBookCover() != null) {
+                book.getBookCover().setBookId(book.getId());
+                covers.add(book.getBookCover());
+            }
+        }
+        isbnRepository.upsert(isbns);
+        bookCoverRepository.upsert(covers);
+    }
+
+    private static boolean normalize(Book book) {
+        if (book.getItemId() == null || book.getItemId().length() > ITEM_ID_LENGTH || book.getTitle() == null) {
+            return false;
+        }
+        book.setTitle(truncate(book.getTitle()));
+        book.setAuthor(truncate(book.getAuthor() == null ? "" : book.getAuthor()));
+        book.setPublisher(truncate(book.getPublisher() == null ? "" : book.getPublisher()));
+        if (book.getPageNum() == null) {
+            book.setPageNum(0);
+        }
+        if (book.getPrice() == null) {
+            book.setPrice(0);
+        }
+        if (book.getIsbn() != null && (book.getIsbn().getIsbn13() == null
+            || !ISBN13.matcher(book.getIsbn().getIsbn13()).matches())) {
+            book.setIsbn(null);
+        }
+        if (book.getBookCover() != null && (book.getBookCover().getImageUrl() == null
+            || book.getBookCover().getImageUrl().length() > TEXT_LENGTH)) {
+            book.setBookCover(null);
+        }
+        return true;
+    }
+
+    private static String truncate(String value) {
+        return value.length() > TEXT_LENGTH ? value.substring(0, TEXT_LENGTH) : value;
+    }
+
+    private static ExecutorService newPool(int threads, String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * State of an execution of the pipeline.
+     */
+    private final class Ingest {
+        private final BookApi bookApi;
+        private final BookApiClient client;
+        private final BlockingQueue<Book> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final Set<List<Object>> seen = ConcurrentHashMap.newKeySet();
+        private final AtomicLong parsed = new AtomicLong();
+        private final AtomicLong duplicates = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private volatile boolean fetched;
+
+        Ingest(BookApi bookApi, BookApiClient client) {
+            this.bookApi = bookApi;
+            this.client = client;
+        }
+
+        IngestResult execute(String query, int pages) {
+            ExecutorService fetchers = newPool(Math.min(fetchConcurrency, pages), "ingest-fetch-");
+            ExecutorService writerPool = newPool(writers, "ingest-write-");
+            try {
+                List<Future<?>> writes = IntStream.range(0, writers)
+                    .mapToObj(i -> writerPool.submit(this::write))
+                    .collect(Collectors.toList());
+                List<Future<?>> fetches = IntStream.range(0, pages)
+                    .mapToObj(page -> fetchers.submit(() -> fetch(query, page)))
+                    .collect(Collectors.toList());
+                fetches.forEach(this::await);
+                fetched = true;
+                writes.forEach(this::await);
+            } finally {
+                fetchers.shutdownNow();
+                writerPool.shutdownNow();
+            }
+
+            Exception e = failure.get();
+            if (e instanceof IOException) {
+                throw new UncheckedIOException((IOException) e);
+            } else if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            } else if (e != null) {
+                throw new IllegalStateException("The ingest has failed.", e);
+            }
+            return new IngestResult(pages, parsed.get(), duplicates.get(), skipped.get(), written.get());
+        }
+
+        private void fetch(String query, int page) {
+            if (failure.get() != null) {
+                return;
+            }
+            try {
+                client.search(query, page, this::offer);
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void offer(Book book) {
+            parsed.incrementAndGet();
+            book.setBookApiId(bookApi.getId());
+            if (!normalize(book)) {
+                skipped.incrementAndGet();
+                return;
+            }
+            if (!seen.add(Arrays.asList(book.getBookApiId(), book.getItemId()))) {
+                duplicates.incrementAndGet();
+                return;
+            }
+            try {
+                // Blocks the parser while the queue is full, which is the backpressure to the fetchers.
+                while (!queue.offer(book, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (failure.get() != null) {
+                        throw new CancellationException("The ingest has been aborted.");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("The ingest has been interrupted.");
+            }
+        }
+
+        private void write() {
+            List<Book> batch = new ArrayList<>(batchSize);
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            try {
+                while (failure.get() == null) {
+                    Book book = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (book != null) {
+                        batch.add(book);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+                    if (batch.size() >= batchSize || (book == null && !batch.isEmpty())) {
+                        transaction.execute(status -> {
+                            BookIngestPipeline.this.write(batch);
+                            return null;
+                        });
+                        written.addAndGet(batch.size());
+                        batch.clear();
+                    } else if (book == null && fetched && queue.isEmpty()) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(new CancellationException("The ingest has been interrupted."));
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void await(Future<?> future) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(new CancellationException("The ingest has been interrupted."));
+            } catch (ExecutionException e) {
+                fail(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+            }
+        }
+
+        private void fail(Exception e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import org.yukung.daguerreo.domain.entity.Book;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Incremental parser of the search results of a book API.
+ * <p>
+ * The implementations read the response as a stream and pass each book to the sink as soon as it is parsed,
+ * without building the whole document in memory. The ISBN and the cover of the books are set if the response has
+ * them, and the IDs of the book and the book API are not set.
+ * </p>
+ *
+ * @author yukung
+ */
+@FunctionalInterface
+public interface BookParser {
+
+    /**
+     * Parses the books of the response.
+     *
+     * @param in   the response body, which is not closed
+     * @param sink the consumer of the parsed books
+     * @throws IOException if the response cannot be read or parsed
+     */
+    void parse(InputStream in, Consumer<Book> sink) throws IOException;
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import lombok.Value;
+
+/**
+ * Result of an ingest by {@link BookIngestPipeline}.
+ *
+ * @author yukung
+ */
+@Value
+public class IngestResult {
+    /**
+     * The number of fetched pages.
+     */
+    private int pages;
+    /**
+     * The number of parsed books.
+     */
+    private long parsed;
+    /**
+     * The number of books which have been parsed already in the ingest.
+     */
+    private long duplicates;
+    /**
+     * The number of books which are skipped as they lack the required values.
+     */
+    private long skipped;
+    /**
+     * The number of written books.
+     */
+    private long written;
+}
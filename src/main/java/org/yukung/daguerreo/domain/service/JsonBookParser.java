@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.yukung.daguerreo.domain.entity.Book;
+import org.yukung.daguerreo.domain.entity.BookCover;
+import org.yukung.daguerreo.domain.entity.Isbn;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * {@link BookParser} of the JSON responses by the Jackson streaming API.
+ * <p>
+ * The parser skips the top-level fields until the array of the items, and reads only one item at a time as a tree,
+ * so the memory does not grow with the size of the response.
+ * </p>
+ *
+ * @author yukung
+ */
+public class JsonBookParser implements BookParser {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String itemsField;
+    private final String itemField;
+    private final Function<JsonNode, Book> mapper;
+
+    /**
+     * Constructs a new parser.
+     *
+     * @param itemsField the name of the top-level field of the array of the items, or {@code null} if the whole
+     *                   response is an item
+     * @param itemField  the name of the field which wraps each item, or {@code null} if the items are not wrapped
+     * @param mapper     the function which maps an item to a book
+     */
+    public JsonBookParser(String itemsField, String itemField, Function<JsonNode, Book> mapper) {
+        this.itemsField = itemsField;
+        this.itemField = itemField;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Returns the parser of the volumes of the Google Books API.
+     *
+     * @return the parser
+     */
+    public static JsonBookParser googleBooks() {
+        return new JsonBookParser("items", null, JsonBookParser::mapGoogleVolume);
+    }
+
+    /**
+     * Returns the parser of a volume of the Google Books API, i.e. the response of {@code /volumes/{id}}.
+     *
+     * @return the parser
+     */
+    public static JsonBookParser googleVolume() {
+        return new JsonBookParser(null, null, JsonBookParser::mapGoogleVolume);
+    }
+
+    /**
+     * Returns the parser of the items of the Rakuten Books search API.
+     * <p>
+     * The items are identified by the ISBN, as the API has no other ID of them.
+     * </p>
+     *
+     * @return the parser
+     */
+    public static JsonBookParser rakuten() {
+        return new JsonBookParser("Items", "Item", item -> {
+            Book book = new Book();
+            String isbn = text(item.path("isbn"));
+            book.setItemId(isbn);
+            book.setTitle(text(item.path("title")));
+            book.setAuthor(text(item.path("author")));
+            book.setPublisher(text(item.path("publisherName")));
+            book.setPrice(integer(item.path("itemPrice")));
+            if (isbn != null) {
+                book.setIsbn(new Isbn(null, isbn));
+            }
+            String image = text(item.path("largeImageUrl"));
+            if (image != null) {
+                book.setBookCover(new BookCover(null, image));
+            }
+            return book;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(InputStream in, Consumer<Book> sink) throws IOException {
+        JsonParser parser = MAPPER.getFactory().createParser(in);
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("The response is not a JSON object.", parser.getCurrentLocation());
+            }
+            if (itemsField == null) {
+                accept(MAPPER.readTree(parser), sink);
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && itemsField.equals(field)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        accept(MAPPER.readTree(parser), sink);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    private void accept(JsonNode item, Consumer<Book> sink) {
+        Book book = mapper.apply(itemField == null ? item : item.path(itemField));
+        if (book != null) {
+            sink.accept(book);
+        }
+    }
+
+    private static Book mapGoogleVolume(JsonNode item) {
+        JsonNode info = item.path("volumeInfo");
+        Book book = new Book();
+        book.setItemId(text(item.path("id")));
+        book.setTitle(text(info.path("title")));
+        book.setAuthor(join(info.path("authors")));
+        book.setPublisher(text(info.path("publisher")));
+        book.setPageNum(integer(info.path("pageCount")));
+        book.setPrice(integer(item.path("saleInfo").path("listPrice").path("amount")));
+        for (JsonNode identifier : info.path("industryIdentifiers")) {
+            if ("ISBN_13".equals(identifier.path("type").asText())) {
+                book.setIsbn(new Isbn(null, text(identifier.path("identifier"))));
+            }
+        }
+        String thumbnail = text(info.path("imageLinks").path("thumbnail"));
+        if (thumbnail != null) {
+            book.setBookCover(new BookCover(null, thumbnail));
+        }
+        return book;
+    }
+
+    private static String text(JsonNode node) {
+        if (!node.isValueNode() || node.isNull()) {
+            return null;
+        }
+        String text = node.asText().trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    private static Integer integer(JsonNode node) {
+        return node.isNumber() ? node.intValue() : null;
+    }
+
+    private static String join(JsonNode array) {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (JsonNode node : array) {
+            String text = text(node);
+            if (text != null) {
+                joiner.add(text);
+            }
+        }
+        return joiner.length() == 0 ? null : joiner.toString();
+    }
+}
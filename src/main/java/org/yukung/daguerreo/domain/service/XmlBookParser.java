@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import org.yukung.daguerreo.domain.entity.Book;
+import org.yukung.daguerreo.domain.entity.BookCover;
+import org.yukung.daguerreo.domain.entity.Isbn;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * {@link BookParser} of the {@code ItemSearch} responses of the Amazon Product Advertising API by StAX.
+ * <p>
+ * Only the path of the current element and a book under construction are kept while reading the events.
+ * The DTDs and the external entities are not resolved.
+ * </p>
+ *
+ * @author yukung
+ */
+public class XmlBookParser implements BookParser {
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The {@link XMLInputFactory} is created on every call, as the factories of the JDK may reuse the readers
+     * and are not guaranteed to be thread-safe.
+     * </p>
+     */
+    @Override
+    public void parse(InputStream in, Consumer<Book> sink) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                parse(reader, sink);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("The response cannot be parsed.", e);
+        }
+    }
+
+    private static void parse(XMLStreamReader reader, Consumer<Book> sink) throws XMLStreamException {
+        Deque<String> path = new ArrayDeque<>();
+        StringBuilder text = new StringBuilder();
+        Book book = null;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (isItem(reader.getLocalName(), path.peek())) {
+                        book = new Book();
+                    }
+                    path.push(reader.getLocalName());
+                    text.setLength(0);
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    text.append(reader.getText());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    String name = path.pop();
+                    if (book != null && isItem(name, path.peek())) {
+                        sink.accept(book);
+                        book = null;
+                    } else if (book != null) {
+                        set(book, name, path.peek(), text.toString().trim());
+                    }
+                    text.setLength(0);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static boolean isItem(String name, String parent) {
+        return "Item".equals(name) && "Items".equals(parent);
+    }
+
+    private static void set(Book book, String name, String parent, String value) {
+        if (value.isEmpty()) {
+            return;
+        }
+        switch (parent + '/' + name) {
+            case "Item/ASIN":
+                book.setItemId(value);
+                break;
+            case "ItemAttributes/Title":
+                book.setTitle(value);
+                break;
+            case "ItemAttributes/Author":
+                book.setAuthor(book.getAuthor() == null ? value : book.getAuthor() + ", " + value);
+                break;
+            case "ItemAttributes/Publisher":
+                book.setPublisher(value);
+                break;
+            case "ItemAttributes/NumberOfPages":
+                book.setPageNum(integer(value));
+                break;
+            case "ItemAttributes/EAN":
+                book.setIsbn(new Isbn(null, value));
+                break;
+            case "ListPrice/Amount":
+                book.setPrice(integer(value));
+                break;
+            case "LargeImage/URL":
+                book.setBookCover(new BookCover(null, value));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Integer integer(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
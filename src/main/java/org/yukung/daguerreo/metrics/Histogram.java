@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values which reports approximate percentiles.
+ * <p>
+ * The values are counted in the buckets which divide every power of two into 8 linear sub-buckets,
+ * so a percentile is reported within 12.5% of the actual value regardless of the magnitude.
+ * </p>
+ *
+ * @author yukung
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the given value.
+     *
+     * @param value the value, negative values are recorded as zero
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        buckets.incrementAndGet(index(v));
+        count.increment();
+        total.add(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    /**
+     * Returns the number of the recorded values.
+     *
+     * @return the count
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded values.
+     *
+     * @return the total
+     */
+    public long total() {
+        return total.sum();
+    }
+
+    /**
+     * Returns the maximum of the recorded values.
+     *
+     * @return the maximum
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the approximate value at the given percentile.
+     *
+     * @param percentile the percentile between 0.0 and 1.0
+     * @return the upper bound of the bucket which contains the percentile, or zero if no value is recorded
+     */
+    public long percentile(double percentile) {
+        long recorded = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            recorded += counts[i];
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * recorded);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Returns the snapshot of the statistics scaled by the given divisor, e.g. 1e6 to report nanoseconds in millis.
+     *
+     * @param divisor the divisor of the values
+     * @return the snapshot which contains count, mean, max and the percentiles
+     */
+    public Map<String, Object> snapshot(double divisor) {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        long n = count();
+        snapshot.put("count", n);
+        snapshot.put("mean", n == 0 ? 0.0 : total() / divisor / n);
+        snapshot.put("max", max() / divisor);
+        for (double percentile : PERCENTILES) {
+            snapshot.put("p" + Math.round(percentile * 100), percentile(percentile) / divisor);
+        }
+        return snapshot;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.metrics;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.jooq.ExecuteListenerProvider;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of the repository metrics.
+ * <p>
+ * The metrics are enabled by default and can be disabled by {@code repository.metrics.enabled=false},
+ * in which case neither the repository operations, the SQL statements nor the connection pool are timed.
+ * </p>
+ *
+ * @author yukung
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public RepositoryMetrics repositoryMetrics(@Value("${repository.metrics.enabled:true}") boolean enabled) {
+        return new RepositoryMetrics(enabled);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "repository.metrics", name = "enabled", matchIfMissing = true)
+    public ExecuteListenerProvider statementMetricsListenerProvider(RepositoryMetrics metrics) {
+        return new DefaultExecuteListenerProvider(new StatementMetricsListener(metrics));
+    }
+
+    @Bean
+    public RepositoryMetricsEndpoint repositoryMetricsEndpoint(RepositoryMetrics metrics) {
+        return new RepositoryMetricsEndpoint(metrics);
+    }
+
+    /**
+     * Configuration of the metrics of the HikariCP connection pool.
+     */
+    @Configuration
+    @ConditionalOnClass(HikariDataSource.class)
+    @ConditionalOnProperty(prefix = "repository.metrics", name = "enabled", matchIfMissing = true)
+    static class PoolMetricsConfiguration {
+
+        @Bean
+        public static PoolMetricsPostProcessor poolMetricsPostProcessor() {
+            return new PoolMetricsPostProcessor();
+        }
+
+        @Bean
+        public PoolMetrics poolMetrics(RepositoryMetrics metrics) {
+            return new PoolMetrics(metrics);
+        }
+    }
+}
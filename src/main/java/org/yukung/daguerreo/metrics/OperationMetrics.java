@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timer, distribution of rows and error counter of a single operation.
+ *
+ * @author yukung
+ */
+public class OperationMetrics {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final Histogram latency = new Histogram();
+    private final Histogram rows = new Histogram();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Records a successful execution.
+     *
+     * @param nanos the elapsed time in nanoseconds
+     * @param rows  the number of rows which are returned or affected
+     */
+    public void success(long nanos, long rows) {
+        latency.record(nanos);
+        this.rows.record(rows);
+    }
+
+    /**
+     * Records a failed execution.
+     *
+     * @param nanos the elapsed time in nanoseconds
+     */
+    public void failure(long nanos) {
+        latency.record(nanos);
+        errors.increment();
+    }
+
+    /**
+     * Returns the snapshot of this operation with the latency in milliseconds.
+     *
+     * @return the snapshot
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("latencyMillis", latency.snapshot(NANOS_PER_MILLI));
+        snapshot.put("rows", rows.snapshot(1.0));
+        snapshot.put("errors", errors.sum());
+        return snapshot;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.metrics;
+
+import com.zaxxer.hikari.metrics.MetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Metrics of the HikariCP connection pool.
+ * <p>
+ * The time to acquire a connection and the time a connection is borrowed are recorded in the
+ * {@link RepositoryMetrics} as the {@code acquire} and {@code usage} operations tagged by {@code pool}, and the
+ * acquisitions which have timed out are counted as the errors of {@code acquire}. The numbers of the active, idle
+ * and total connections and of the threads waiting for a connection are published as the gauges of
+ * {@code /metrics}.
+ * </p>
+ *
+ * @author yukung
+ */
+public class PoolMetrics implements MetricsTrackerFactory, PublicMetrics {
+
+    /**
+     * The tag of the operations of the pool.
+     */
+    public static final String TAG = "pool";
+
+    private final RepositoryMetrics metrics;
+    private volatile String poolName;
+    private volatile PoolStats poolStats;
+
+    /**
+     * Creates the metrics which are recorded in the given registry.
+     *
+     * @param metrics the registry
+     */
+    public PoolMetrics(RepositoryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolName = poolName;
+        this.poolStats = poolStats;
+        OperationMetrics acquire = metrics.operation(TAG, "acquire");
+        OperationMetrics usage = metrics.operation(TAG, "usage");
+        return new MetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquire.success(elapsedAcquiredNanos, 1);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usage.success(elapsedBorrowedMillis * 1_000_000, 1);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<Metric<?>> metrics() {
+        PoolStats stats = poolStats;
+        if (stats == null) {
+            return Collections.emptyList();
+        }
+        String prefix = TAG + "." + poolName + ".";
+        List<Metric<?>> gauges = new ArrayList<>();
+        gauges.add(new Metric<>(prefix + "active", stats.getActiveConnections()));
+        gauges.add(new Metric<>(prefix + "idle", stats.getIdleConnections()));
+        gauges.add(new Metric<>(prefix + "total", stats.getTotalConnections()));
+        gauges.add(new Metric<>(prefix + "pending", stats.getPendingThreads()));
+        return gauges;
+    }
+}
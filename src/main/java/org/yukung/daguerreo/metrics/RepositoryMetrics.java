@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.metrics;
+
+import org.jooq.Table;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Registry of the {@link OperationMetrics} of the repository operations and the SQL statements.
+ * <p>
+ * The operations are tagged by the table name. When the metrics are disabled, {@link #record} only calls
+ * the action, so the instrumented code does not pay for the timers.
+ * </p>
+ *
+ * @author yukung
+ */
+public class RepositoryMetrics {
+
+    /**
+     * The metrics which record nothing.
+     */
+    public static final RepositoryMetrics DISABLED = new RepositoryMetrics(false);
+
+    private final boolean enabled;
+    private final ConcurrentMap<String, ConcurrentMap<String, OperationMetrics>> operations =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Creates the metrics.
+     *
+     * @param enabled whether the operations are recorded
+     */
+    public RepositoryMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns whether the operations are recorded.
+     *
+     * @return {@code true} if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Executes the given action and records its elapsed time, rows and error.
+     *
+     * @param table     the table which tags the operation
+     * @param operation the name of the operation
+     * @param action    the action which performs the operation
+     * @param rows      the function which counts the rows returned or affected by the result
+     * @param <T>       the type of result
+     * @return the result of the action
+     */
+    public <T> T record(Table<?> table, String operation, Supplier<T> action, ToLongFunction<? super T> rows) {
+        if (!enabled) {
+            return action.get();
+        }
+        OperationMetrics metrics = operation(table.getName(), operation);
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = action.get();
+        } catch (RuntimeException | Error e) {
+            long elapsed = System.nanoTime() - start;
+            metrics.failure(elapsed);
+            if (isConnectionTimeout(e)) {
+                operation(PoolMetrics.TAG, "acquire").failure(elapsed);
+            }
+            throw e;
+        }
+        metrics.success(System.nanoTime() - start, rows.applyAsLong(result));
+        return result;
+    }
+
+    private static boolean isConnectionTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            // HikariCP throws it when no connection becomes available within the connection timeout.
+            if (cause instanceof SQLTransientConnectionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the metrics of the given operation, which are created at the first call.
+     *
+     * @param tag       the tag, e.g. the table name
+     * @param operation the name of the operation
+     * @return the metrics of the operation
+     */
+    public OperationMetrics operation(String tag, String operation) {
+        ConcurrentMap<String, OperationMetrics> tagged = operations.get(tag);
+        if (tagged == null) {
+            tagged = operations.computeIfAbsent(tag, key -> new ConcurrentHashMap<>());
+        }
+        OperationMetrics metrics = tagged.get(operation);
+        if (metrics == null) {
+            metrics = tagged.computeIfAbsent(operation, key -> new OperationMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the snapshot of all operations which are grouped by the tags.
+     *
+     * @return the snapshot
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        operations.forEach((tag, tagged) -> {
+            Map<String, Object> operations = new TreeMap<>();
+            tagged.forEach((operation, metrics) -> operations.put(operation, metrics.snapshot()));
+            snapshot.put(tag, operations);
+        });
+        return snapshot;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.metrics;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint which exposes the {@link RepositoryMetrics} at {@code /repositories}.
+ *
+ * @author yukung
+ */
+public class RepositoryMetricsEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+    private final RepositoryMetrics metrics;
+
+    /**
+     * Creates the endpoint of the given metrics.
+     *
+     * @param metrics the metrics
+     */
+    public RepositoryMetricsEndpoint(RepositoryMetrics metrics) {
+        super("repositories");
+        this.metrics = metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> invoke() {
+        return metrics.snapshot();
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.metrics;
+
+import org.jooq.ExecuteContext;
+import org.jooq.impl.DefaultExecuteListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link org.jooq.ExecuteListener} which records the time to render, execute and fetch each SQL statement.
+ * <p>
+ * The statements are tagged by {@code sql:} and the rendered SQL, which is abbreviated to
+ * {@value #ABBREVIATION} characters and followed by the hash of the whole SQL, and their operations are named by
+ * the phase and the {@link org.jooq.ExecuteType}, e.g. {@code execute.READ}. Up to {@value #MAX_STATEMENTS}
+ * distinct statements are tagged, so that the SQL with inlined values does not grow the metrics without bound, and
+ * the others are tagged by {@code sql:other}, as well as the statements of which SQL is unknown, e.g. the failures
+ * of rendering.
+ * </p>
+ * <p>
+ * The rows of the fetch phase are counted record by record, so that the lazy cursors, of which result is never
+ * built, are counted as well, and the fetch of a lazy cursor ends when it is closed. An exception is counted as the
+ * failure of the phase which has not ended, or of the execute phase if none has started.
+ * </p>
+ *
+ * @author yukung
+ */
+public class StatementMetricsListener extends DefaultExecuteListener {
+
+    private static final long serialVersionUID = 2436410379425587346L;
+
+    /**
+     * The tag of the statement metrics, which prefixes the tag of each statement.
+     */
+    public static final String TAG = "sql";
+
+    /**
+     * The maximum number of the statements which are tagged on their own.
+     */
+    public static final int MAX_STATEMENTS = 256;
+
+    /**
+     * The number of the characters of the SQL in the tag of a statement.
+     */
+    public static final int ABBREVIATION = 100;
+
+    private static final String OTHER = TAG + ":other";
+    private static final String STATEMENT = StatementMetricsListener.class.getName() + ".statement";
+    private static final String RENDER = StatementMetricsListener.class.getName() + ".render";
+    private static final String EXECUTE = StatementMetricsListener.class.getName() + ".execute";
+    private static final String FETCH = StatementMetricsListener.class.getName() + ".fetch";
+
+    private final transient RepositoryMetrics metrics;
+    private final transient ConcurrentMap<String, String> statements = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the listener which records into the given metrics.
+     *
+     * @param metrics the metrics
+     */
+    public StatementMetricsListener(RepositoryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the tag of the given SQL.
+     *
+     * @param sql the rendered SQL, may be {@code null}
+     * @return the tag of the statement
+     */
+    String tag(String sql) {
+        if (sql == null) {
+            return OTHER;
+        }
+        String tag = statements.get(sql);
+        if (tag == null) {
+            if (statements.size() >= MAX_STATEMENTS) {
+                return OTHER;
+            }
+            String abbreviated = sql.length() > ABBREVIATION ? sql.substring(0, ABBREVIATION) + "..." : sql;
+            tag = statements.computeIfAbsent(sql,
+                key -> TAG + ":" + abbreviated + " #" + String.format("%08x", key.hashCode()));
+        }
+        return tag;
+    }
+
+    @Override
+    public void renderStart(ExecuteContext ctx) {
+        ctx.data(RENDER, System.nanoTime());
+    }
+
+    @Override
+    public void renderEnd(ExecuteContext ctx) {
+        record(ctx, RENDER, "render", 0);
+    }
+
+    @Override
+    public void executeStart(ExecuteContext ctx) {
+        ctx.data(EXECUTE, System.nanoTime());
+    }
+
+    @Override
+    public void executeEnd(ExecuteContext ctx) {
+        record(ctx, EXECUTE, "execute", Math.max(ctx.rows(), 0));
+    }
+
+    @Override
+    public void fetchStart(ExecuteContext ctx) {
+        ctx.data(FETCH, new Fetch());
+    }
+
+    @Override
+    public void recordEnd(ExecuteContext ctx) {
+        Object fetch = ctx.data(FETCH);
+        if (fetch instanceof Fetch) {
+            ((Fetch) fetch).rows++;
+        }
+    }
+
+    @Override
+    public void fetchEnd(ExecuteContext ctx) {
+        Object fetch = ctx.data().remove(FETCH);
+        if (fetch instanceof Fetch) {
+            operation(ctx, "fetch").success(System.nanoTime() - ((Fetch) fetch).start, ((Fetch) fetch).rows);
+        }
+    }
+
+    @Override
+    public void exception(ExecuteContext ctx) {
+        Object fetch = ctx.data().remove(FETCH);
+        if (fetch instanceof Fetch) {
+            operation(ctx, "fetch").failure(System.nanoTime() - ((Fetch) fetch).start);
+        } else if (!failure(ctx, EXECUTE, "execute") && !failure(ctx, RENDER, "render")) {
+            operation(ctx, "execute").failure(0);
+        }
+    }
+
+    private void record(ExecuteContext ctx, String key, String phase, long rows) {
+        // The phase has ended, so that an exception after it is not counted as its failure.
+        Object start = ctx.data().remove(key);
+        if (start instanceof Long) {
+            operation(ctx, phase).success(System.nanoTime() - (Long) start, rows);
+        }
+    }
+
+    private boolean failure(ExecuteContext ctx, String key, String phase) {
+        Object start = ctx.data().remove(key);
+        if (start instanceof Long) {
+            operation(ctx, phase).failure(System.nanoTime() - (Long) start);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the metrics of the given phase of the statement, of which tag is resolved once per execution.
+     */
+    private OperationMetrics operation(ExecuteContext ctx, String phase) {
+        Object tag = ctx.data(STATEMENT);
+        if (tag == null && ctx.sql() != null) {
+            tag = tag(ctx.sql());
+            ctx.data(STATEMENT, tag);
+        }
+        return metrics.operation(tag == null ? OTHER : (String) tag, phase + "." + ctx.type());
+    }
+
+    /**
+     * The start and the rows of a fetch.
+     */
+    private static final class Fetch {
+
+        private final long start = System.nanoTime();
+        private long rows;
+    }
+}
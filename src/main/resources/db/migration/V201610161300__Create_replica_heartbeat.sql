@@ -0,0 +1,4 @@
+CREATE TABLE IF NOT EXISTS replica_heartbeat (
+  id   INT       NOT NULL PRIMARY KEY,
+  beat TIMESTAMP NOT NULL
+);
@@ -0,0 +1,7 @@
+CREATE TABLE IF NOT EXISTS book_api_response (
+  book_api_id INT           NOT NULL,
+  query       VARCHAR(1024) NOT NULL,
+  body        BLOB          NOT NULL,
+  fetched_at  TIMESTAMP     NOT NULL,
+  PRIMARY KEY (book_api_id, query)
+);
@@ -20,6 +20,7 @@ import static com.ninja_squad.dbsetup.Operations.*;
 import static org.assertj.core.api.Assertions.*;
 import static org.yukung.daguerreo.infrastructure.Tables.*;
 
+import com.google.common.collect.Lists;
 import com.ninja_squad.dbsetup.DbSetup;
 import com.ninja_squad.dbsetup.DbSetupTracker;
 import com.ninja_squad.dbsetup.destination.DataSourceDestination;
@@ -27,27 +28,38 @@ import com.ninja_squad.dbsetup.operation.Operation;
 import org.assertj.db.api.Assertions;
 import org.assertj.db.type.Table;
 import org.jooq.Field;
-import org.jooq.impl.DefaultRecordMapper;
+import org.jooq.exception.DataAccessException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Order;
 import org.springframework.stereotype.Repository;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.yukung.daguerreo.Application;
 import org.yukung.daguerreo.domain.entity.BookApi;
 import org.yukung.daguerreo.infrastructure.tables.records.BookApiRecord;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.sql.DataSource;
 
 /**
@@ -62,6 +74,9 @@ public class BasicJooqRepositoryTest {
     @Autowired
     private DummyRepository repository;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     // Setup for DB Testing
     @Autowired
     private DataSource ds;
@@ -69,7 +84,8 @@ public class BasicJooqRepositoryTest {
         Arrays.stream(BOOK_API.fields())
             .map(Field::getName)
             .toArray(String[]::new);
-    private static final Operation DELETE_ALL_BOOK_API = deleteAllFrom(BOOK_API.getName());
+    private static final Operation DELETE_ALL_BOOK_API =
+        deleteAllFrom(BOOK_COVER.getName(), ISBN.getName(), BOOK.getName(), BOOK_API.getName());
     private static final Operation INSERT_BOOK_API =
         insertInto(BOOK_API.getName()).columns(COLUMNS_BOOK_API)
             .values(1, "Amazon Product Advertising API", "https://ecs.amazonaws.jp/onca/xml")
@@ -97,7 +113,7 @@ public class BasicJooqRepositoryTest {
 
     @Test
     public void mapper() throws Exception {
-        assertThat(repository.mapper()).isNotNull().isExactlyInstanceOf(DefaultRecordMapper.class);
+        assertThat(repository.mapper()).isNotNull().isExactlyInstanceOf(EntityRecordMapper.class);
     }
 
     @Test
@@ -141,6 +157,55 @@ public class BasicJooqRepositoryTest {
             );
     }
 
+    @Test
+    public void findAllByIdsInParallelChunks() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        repository.setBatchSize(1);
+        repository.setIdQueryExecutor(executor);
+
+        // when
+        List<BookApi> bookApis;
+        try {
+            bookApis = repository.findAll(Arrays.asList(1, 2, 3, 4));
+        } finally {
+            repository.setBatchSize(BasicJooqRepository.DEFAULT_BATCH_SIZE);
+            repository.setIdQueryExecutor(null);
+            executor.shutdown();
+        }
+
+        // then
+        assertThat(bookApis)
+            .hasSize(3)
+            .extracting("id")
+            .containsOnly(1, 2, 3);
+    }
+
+    @Test
+    public void findAllByIdsByArrayJoin() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+        repository.setArrayJoinThreshold(1);
+
+        // when
+        List<BookApi> bookApis;
+        try {
+            bookApis = repository.findAll(Arrays.asList(3, 1, 4, 2));
+        } finally {
+            repository.setArrayJoinThreshold(0);
+        }
+
+        // then
+        assertThat(bookApis)
+            .hasSize(3)
+            .extracting("id")
+            .containsExactly(3, 1, 2);
+        assertThat(bookApis)
+            .extracting("name")
+            .containsExactly("楽天ブックス書籍検索API", "Amazon Product Advertising API", "Google Books API");
+    }
+
     @Test
     public void findAllByIdsWhichAreNothing() throws Exception {
         // given
@@ -311,6 +376,52 @@ public class BasicJooqRepositoryTest {
         assertThat(bookApis2.hasPrevious()).isTrue();
     }
 
+    @Test
+    public void findAllByPageableWithWindowCount() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+        repository.setPagingMode(PagingMode.WINDOW);
+
+        // when
+        Page<BookApi> bookApis;
+        try {
+            bookApis = repository.findAll(new PageRequest(0, 2, new Sort(Sort.Direction.DESC, "id")));
+        } finally {
+            repository.setPagingMode(PagingMode.DERIVED);
+        }
+
+        // then
+        assertThat(bookApis)
+            .extracting("id")
+            .containsExactly(3, 2);
+        assertThat(bookApis.getTotalElements()).isEqualTo(3);
+        assertThat(bookApis.getTotalPages()).isEqualTo(2);
+    }
+
+    @Test
+    public void findAllByPageableWithCachedCount() throws Exception {
+        // given
+        repository.setPagingMode(PagingMode.CACHED);
+        repository.setRowCountCache(new RowCountCache(1, TimeUnit.HOURS));
+
+        // when
+        Page<BookApi> before;
+        Page<BookApi> after;
+        try {
+            before = repository.findAll(new PageRequest(0, 2));
+            repository.save(new BookApi(null, "新規書籍API", "http://newbooks.com/api/v1/book"));
+            after = repository.findAll(new PageRequest(0, 2));
+        } finally {
+            repository.setPagingMode(PagingMode.DERIVED);
+            repository.setRowCountCache(
+                new RowCountCache(BasicJooqRepository.DEFAULT_COUNT_REFRESH_SECONDS, TimeUnit.SECONDS));
+        }
+
+        // then
+        assertThat(before.getTotalElements()).isEqualTo(3);
+        assertThat(after.getTotalElements()).isEqualTo(4);
+    }
+
     @Test
     public void findAllByPageableNothing() throws Exception {
         // given
@@ -342,6 +453,112 @@ public class BasicJooqRepositoryTest {
         assertThat(bookApis.hasPrevious()).isFalse();
     }
 
+    @Test
+    public void streamAll() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        List<BookApi> bookApis;
+        try (Stream<BookApi> stream = repository.streamAll(new Sort(Sort.Direction.DESC, "id"))) {
+            bookApis = stream.collect(Collectors.toList());
+        }
+
+        // then
+        assertThat(bookApis)
+            .extracting("id", "name", "url")
+            .containsExactly(
+                tuple(3, "楽天ブックス書籍検索API", "https://app.rakuten.co.jp/services/api/BooksBook/Search/20130522"),
+                tuple(2, "Google Books API", "https://www.googleapis.com/books/v1/volumes"),
+                tuple(1, "Amazon Product Advertising API", "https://ecs.amazonaws.jp/onca/xml")
+            );
+    }
+
+    @Test
+    public void forEach() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+        List<BookApi> bookApis = new ArrayList<>();
+
+        // when
+        repository.forEach(bookApis::add);
+
+        // then
+        assertThat(bookApis)
+            .hasSize(3)
+            .extracting("id")
+            .containsOnly(1, 2, 3);
+    }
+
+    @Test
+    public void findAllAfter() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+        Sort sort = new Sort(Sort.Direction.DESC, "id");
+
+        // when
+        Slice<BookApi> slice1 = repository.findAllAfter(null, sort, 2);
+        Slice<BookApi> slice2 = repository.findAllAfter(slice1.getContent().get(1).getId(), sort, 2);
+
+        // then
+        assertThat(slice1.getContent())
+            .extracting("id")
+            .containsExactly(3, 2);
+        assertThat(slice1.hasNext()).isTrue();
+        assertThat(slice2.getContent())
+            .extracting("id")
+            .containsExactly(1);
+        assertThat(slice2.hasNext()).isFalse();
+    }
+
+    @Test
+    public void findAllAfterDeletedKey() throws Exception {
+        // given
+        Sort byId = new Sort("id");
+        Sort byName = new Sort("name");
+        Slice<BookApi> previousById = repository.findAllAfter(null, byId, 1);
+        Slice<BookApi> previousByName = repository.findAllAfter(null, byName, 1);
+        repository.delete(1);
+
+        // when
+        Slice<BookApi> sliceById = repository.findAllAfter(previousById.getContent().get(0).getId(), byId, 1);
+        Throwable thrown = catchThrowable(() -> repository.findAllAfter(1, byName, 1));
+        Slice<BookApi> sliceByName = repository.findAllAfter(previousByName);
+
+        // then
+        assertThat(sliceById.getContent())
+            .extracting("id")
+            .containsExactly(2);
+        assertThat(sliceById.hasNext()).isTrue();
+        assertThat(thrown).isInstanceOf(DataAccessException.class);
+        assertThat(previousByName.getContent())
+            .extracting("id")
+            .containsExactly(1);
+        assertThat(sliceByName.getContent())
+            .extracting("id")
+            .containsExactly(2);
+        assertThat(sliceByName.hasNext()).isTrue();
+    }
+
+    @Test
+    public void findAllAfterWithoutSort() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        Slice<BookApi> slice = repository.findAllAfter(1, null, 2);
+
+        // then
+        assertThat(slice.getContent())
+            .extracting("id", "name")
+            .containsExactly(
+                tuple(2, "Google Books API"),
+                tuple(3, "楽天ブックス書籍検索API")
+            );
+        assertThat(slice.hasNext()).isFalse();
+        assertThat(slice.getSize()).isEqualTo(2);
+    }
+
     @Test
     public void findOne() throws Exception {
         // given
@@ -357,6 +574,22 @@ public class BasicJooqRepositoryTest {
         assertThat(bookApi.getUrl()).isEqualTo("https://www.googleapis.com/books/v1/volumes");
     }
 
+    @Test
+    public void findOneAsync() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        CompletableFuture<BookApi> bookApi1 = repository.async().findOne(1);
+        CompletableFuture<BookApi> bookApi3 = repository.async().findOne(3);
+        CompletableFuture.allOf(bookApi1, bookApi3).get(10, TimeUnit.SECONDS);
+
+        // then
+        assertThat(bookApi1.get()).isEqualTo(
+            new BookApi(1, "Amazon Product Advertising API", "https://ecs.amazonaws.jp/onca/xml"));
+        assertThat(bookApi3.get().getName()).isEqualTo("楽天ブックス書籍検索API");
+    }
+
     @Test
     public void findOneNotExists() throws Exception {
         // given
@@ -369,6 +602,82 @@ public class BasicJooqRepositoryTest {
         assertThat(nothing).isNull();
     }
 
+    @Test
+    public void findOneThroughCache() throws Exception {
+        // given
+        EntityCache<BookApiRecord> cache = new EntityCache<>(10, 1, TimeUnit.MINUTES);
+        repository.setEntityCache(cache);
+
+        try {
+            // when
+            BookApi miss = repository.findOne(2);
+            BookApi hit = repository.findOne(2);
+            List<BookApi> partial = repository.findAll(Arrays.asList(1, 2));
+            boolean exists = repository.exists(1);
+
+            // then
+            assertThat(hit).isEqualTo(miss).isNotSameAs(miss);
+            assertThat(partial).extracting("id").containsOnly(1, 2);
+            assertThat(exists).isTrue();
+            assertThat(cache.size()).isEqualTo(2);
+            assertThat(cache.stats().missCount()).isEqualTo(2);
+            assertThat(cache.stats().hitCount()).isEqualTo(3);
+        } finally {
+            repository.setEntityCache(null);
+        }
+    }
+
+    @Test
+    public void saveAndDeleteUpdateCache() throws Exception {
+        // given
+        EntityCache<BookApiRecord> cache = new EntityCache<>(10, 1, TimeUnit.MINUTES);
+        repository.setEntityCache(cache);
+
+        try {
+            repository.findOne(2);
+
+            // when
+            repository.save(new BookApi(2, "ダミーAPI", "http://example.com/api/v2/book"));
+            BookApi updated = repository.findOne(2);
+            repository.delete(2);
+            BookApi deleted = repository.findOne(2);
+
+            // then
+            assertThat(updated.getName()).isEqualTo("ダミーAPI");
+            assertThat(deleted).isNull();
+            assertThat(cache.size()).isEqualTo(0);
+        } finally {
+            repository.setEntityCache(null);
+        }
+    }
+
+    @Test
+    public void rolledBackSaveIsNotCached() throws Exception {
+        // given
+        EntityCache<BookApiRecord> cache = new EntityCache<>(10, 1, TimeUnit.MINUTES);
+        repository.setEntityCache(cache);
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+
+        try {
+            repository.findOne(2);
+
+            // when
+            BookApi uncommitted = template.execute(status -> {
+                repository.save(new BookApi(2, "ダミーAPI", "http://example.com/api/v2/book"));
+                BookApi bookApi = repository.findOne(2);
+                status.setRollbackOnly();
+                return bookApi;
+            });
+            BookApi bookApi = repository.findOne(2);
+
+            // then
+            assertThat(uncommitted.getName()).isEqualTo("ダミーAPI");
+            assertThat(bookApi.getName()).isEqualTo("Google Books API");
+        } finally {
+            repository.setEntityCache(null);
+        }
+    }
+
     @Test
     public void exists() throws Exception {
         // given
@@ -519,6 +828,44 @@ public class BasicJooqRepositoryTest {
             .row().hasValues(bookApi2.getId(), bookApi2.getName(), bookApi2.getUrl());
     }
 
+    @Test
+    public void multiSaveInBatches() throws Exception {
+        // given
+        List<BookApi> bookApis = Arrays.asList(
+            new BookApi(1, "ダミーAPI", "http://example.com/api/v2/book"), // update
+            new BookApi(null, "新規書籍API", "http://newbooks.com/api/v1/book"), // insert by auto-generated ID
+            new BookApi(5, "指定ID書籍API", "http://example.com/api/v5/book"), // insert by specified ID
+            new BookApi(null, "新規書籍API2", "http://newbooks.com/api/v2/book"), // insert by auto-generated ID
+            new BookApi(3, "ダミーAPI2", "http://example.com/api/v3/book") // update
+        );
+        repository.setBatchSize(2);
+
+        // when
+        List<BookApi> saved;
+        try {
+            saved = Lists.newArrayList(repository.save(bookApis));
+        } finally {
+            repository.setBatchSize(BasicJooqRepository.DEFAULT_BATCH_SIZE);
+        }
+
+        // then
+        assertThat(saved)
+            .hasSize(5)
+            .doesNotContainNull()
+            .extracting("name")
+            .containsExactly("ダミーAPI", "新規書籍API", "指定ID書籍API", "新規書籍API2", "ダミーAPI2");
+        assertThat(saved.get(1).getId()).isNotNull().isPositive();
+        assertThat(saved.get(3).getId()).isNotNull().isPositive().isNotEqualTo(saved.get(1).getId());
+        Assertions.assertThat(new Table(ds, BOOK_API.getName()))
+            .hasNumberOfRows(6)
+            .row().hasValues(1, "ダミーAPI", "http://example.com/api/v2/book")
+            .row().hasValues(2, "Google Books API", "https://www.googleapis.com/books/v1/volumes")
+            .row().hasValues(3, "ダミーAPI2", "http://example.com/api/v3/book");
+        assertThat(repository.findAll(Arrays.asList(saved.get(1).getId(), 5, saved.get(3).getId())))
+            .extracting("name")
+            .containsOnly("新規書籍API", "指定ID書籍API", "新規書籍API2");
+    }
+
     @Test
     public void multiSaveWithEmptyList() throws Exception {
         // given
@@ -547,6 +894,51 @@ public class BasicJooqRepositoryTest {
             .isEmpty();
     }
 
+    @Test
+    public void upsert() throws Exception {
+        // given
+        BookApi bookApi = new BookApi(2, "ダミーAPI", "http://example.com/api/v2/book");
+
+        // when
+        BookApi upserted = repository.upsert(bookApi);
+
+        // then
+        assertThat(upserted).isEqualTo(new BookApi(2, "ダミーAPI", "http://example.com/api/v2/book"));
+        Assertions.assertThat(new Table(ds, BOOK_API.getName()))
+            .hasNumberOfRows(3)
+            .row(1).hasValues(2, "ダミーAPI", "http://example.com/api/v2/book");
+    }
+
+    @Test
+    public void multiUpsert() throws Exception {
+        // given
+        List<BookApi> bookApis = Arrays.asList(
+            new BookApi(1, "ダミーAPI", "http://example.com/api/v2/book"), // update
+            new BookApi(5, "指定ID書籍API", "http://example.com/api/v5/book"), // insert by specified ID
+            new BookApi(null, "新規書籍API", "http://newbooks.com/api/v1/book") // insert by auto-generated ID
+        );
+        repository.setSaveMode(SaveMode.UPSERT);
+
+        // when
+        List<BookApi> saved;
+        try {
+            saved = Lists.newArrayList(repository.save(bookApis));
+        } finally {
+            repository.setSaveMode(SaveMode.STORE);
+        }
+
+        // then
+        assertThat(saved)
+            .extracting("name")
+            .containsExactly("ダミーAPI", "指定ID書籍API", "新規書籍API");
+        assertThat(saved.get(2).getId()).isNotNull().isPositive();
+        Assertions.assertThat(new Table(ds, BOOK_API.getName()))
+            .hasNumberOfRows(5)
+            .row().hasValues(1, "ダミーAPI", "http://example.com/api/v2/book")
+            .row().hasValues(2, "Google Books API", "https://www.googleapis.com/books/v1/volumes");
+        assertThat(repository.findOne(5)).isEqualTo(new BookApi(5, "指定ID書籍API", "http://example.com/api/v5/book"));
+    }
+
     @Test
     public void deleteById() throws Exception {
         // given
@@ -561,6 +953,25 @@ public class BasicJooqRepositoryTest {
             .column(BOOK_API.ID.getName()).hasValues(2, 3);
     }
 
+    @Test
+    public void deleteByReferencedIdIsTranslated() throws Exception {
+        // given
+        Integer id = 2;
+        new DbSetup(new DataSourceDestination(ds),
+            insertInto(BOOK.getName())
+                .columns("id", "book_api_id", "item_id", "title", "author", "publisher", "page_num", "price")
+                .values(1L, id, "item-1", "Java本格入門", "谷本 心", "技術評論社", 432, 3218)
+                .build()).launch();
+
+        // when
+        Throwable thrown = catchThrowable(() -> repository.delete(id));
+
+        // then
+        assertThat(thrown).isInstanceOf(DataIntegrityViolationException.class);
+        Assertions.assertThat(new Table(ds, BOOK_API.getName()))
+            .hasNumberOfRows(3);
+    }
+
     @Test
     public void deleteByNotExistsId() throws Exception {
         // given
@@ -606,6 +1017,28 @@ public class BasicJooqRepositoryTest {
             .row().hasValues(2, "Google Books API", "https://www.googleapis.com/books/v1/volumes");
     }
 
+    @Test
+    public void multiDeleteInChunks() throws Exception {
+        // given
+        List<BookApi> bookApis = Arrays.asList(
+            new BookApi(1, "Amazon Product Advertising API", "https://ecs.amazonaws.jp/onca/xml"),
+            new BookApi(2, "Google Books API", "https://www.googleapis.com/books/v1/volumes"),
+            new BookApi(3, "楽天ブックス書籍検索API", "https://app.rakuten.co.jp/services/api/BooksBook/Search/20130522")
+        );
+        repository.setBatchSize(2);
+
+        // when
+        try {
+            repository.delete(bookApis);
+        } finally {
+            repository.setBatchSize(BasicJooqRepository.DEFAULT_BATCH_SIZE);
+        }
+
+        // then
+        Assertions.assertThat(new Table(ds, BOOK_API.getName()))
+            .hasNumberOfRows(0);
+    }
+
     @Test
     public void deleteInBatch() throws Exception {
         // given
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.yukung.daguerreo.domain.entity.BookApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Unit tests for {@link BatchLoader}.
+ *
+ * @author yukung
+ */
+public class BatchLoaderTest {
+
+    private List<List<Integer>> batches;
+    private BatchLoader<BookApi, Integer> loader;
+
+    @Before
+    public void setUp() throws Exception {
+        batches = new ArrayList<>();
+        loader = new BatchLoader<>(this::findAll, 2);
+    }
+
+    private List<BookApi> findAll(List<Integer> ids) {
+        batches.add(ids);
+        return ids.stream()
+            .filter(id -> id < 10)
+            .map(id -> new BookApi(id, "api-" + id, "http://example.com/" + id))
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    public void loadIsDeferredUntilDispatch() throws Exception {
+        // when
+        CompletableFuture<BookApi> bookApi = loader.load(1);
+
+        // then
+        assertThat(bookApi).isNotDone();
+        assertThat(batches).isEmpty();
+        assertThat(loader.pendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void dispatchCoalescesLoads() throws Exception {
+        // given
+        CompletableFuture<BookApi> bookApi1 = loader.load(1);
+        CompletableFuture<BookApi> bookApi2 = loader.load(2);
+        CompletableFuture<BookApi> duplicated = loader.load(1);
+        CompletableFuture<BookApi> missing = loader.load(99);
+
+        // when
+        loader.dispatch();
+
+        // then
+        assertThat(duplicated).isSameAs(bookApi1);
+        assertThat(bookApi1.get()).isEqualTo(new BookApi(1, "api-1", "http://example.com/1"));
+        assertThat(bookApi2.get().getId()).isEqualTo(2);
+        assertThat(missing.get()).isNull();
+        assertThat(batches).containsExactly(Arrays.asList(1, 2), Arrays.asList(99));
+        assertThat(loader.pendingCount()).isZero();
+    }
+
+    @Test
+    public void loadedEntitiesAreCached() throws Exception {
+        // given
+        loader.load(1);
+        loader.dispatch();
+
+        // when
+        CompletableFuture<BookApi> bookApi = loader.load(1);
+        loader.dispatch();
+
+        // then
+        assertThat(bookApi).isDone();
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    public void loadMany() throws Exception {
+        // given
+        CompletableFuture<List<BookApi>> bookApis = loader.loadMany(Arrays.asList(3, 99, 1));
+
+        // when
+        loader.dispatch();
+
+        // then
+        assertThat(bookApis.get())
+            .extracting("id")
+            .containsExactly(3, null, 1);
+    }
+
+    @Test
+    public void failedLoadsAreRetried() throws Exception {
+        // given
+        BatchLoader<BookApi, Integer> failing = new BatchLoader<>(ids -> {
+            if (batches.isEmpty()) {
+                batches.add(ids);
+                throw new IllegalStateException("failure");
+            }
+            return findAll(ids);
+        }, 10);
+        CompletableFuture<BookApi> failed = failing.load(1);
+
+        // when
+        failing.dispatch();
+        CompletableFuture<BookApi> retried = failing.load(1);
+        failing.dispatch();
+
+        // then
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(retried.get().getId()).isEqualTo(1);
+    }
+
+    @Test
+    public void dispatchAfterWindow() throws Exception {
+        // given
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        BatchLoader<BookApi, Integer> scheduled =
+            new BatchLoader<>(this::findAll, 10, scheduler, 10, TimeUnit.MILLISECONDS);
+
+        // when
+        List<BookApi> bookApis;
+        try {
+            bookApis = scheduled.loadMany(Arrays.asList(1, 2, 3)).get(10, TimeUnit.SECONDS);
+        } finally {
+            scheduler.shutdown();
+        }
+
+        // then
+        assertThat(bookApis).extracting("id").containsExactly(1, 2, 3);
+        assertThat(batches).containsExactly(Arrays.asList(1, 2, 3));
+    }
+}
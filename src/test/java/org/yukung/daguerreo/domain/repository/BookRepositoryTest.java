@@ -0,0 +1,449 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static com.ninja_squad.dbsetup.Operations.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.yukung.daguerreo.infrastructure.Tables.*;
+
+import com.google.common.collect.Lists;
+import com.ninja_squad.dbsetup.DbSetup;
+import com.ninja_squad.dbsetup.DbSetupTracker;
+import com.ninja_squad.dbsetup.destination.DataSourceDestination;
+import com.ninja_squad.dbsetup.operation.Operation;
+import org.assertj.db.api.Assertions;
+import org.assertj.db.type.Table;
+import org.jooq.Field;
+import org.jooq.exception.DataChangedException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.yukung.daguerreo.Application;
+import org.yukung.daguerreo.domain.entity.Book;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+
+/**
+ * Unit tests for {@link BookRepository}.
+ *
+ * @author yukung
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(Application.class)
+public class BookRepositoryTest {
+
+    @Autowired
+    private BookRepository repository;
+
+    // Setup for DB Testing
+    @Autowired
+    private DataSource ds;
+    private static final Operation DELETE_ALL =
+        deleteAllFrom(BOOK_COVER.getName(), ISBN.getName(), BOOK.getName(), BOOK_API.getName());
+    private static final Operation INSERT_BOOK_API =
+        insertInto(BOOK_API.getName()).columns("id", "name", "url")
+            .values(1, "Google Books API", "https://www.googleapis.com/books/v1/volumes")
+            .values(2, "楽天ブックス書籍検索API", "https://app.rakuten.co.jp/services/api/BooksBook/Search/20130522")
+            .build();
+    private static final Operation INSERT_BOOK =
+        insertInto(BOOK.getName())
+            .columns("id", "book_api_id", "item_id", "title", "author", "publisher", "page_num", "price", "version")
+            .values(1L, 1, "item-1", "Java本格入門", "谷本 心", "技術評論社", 432, 3218, 0)
+            .values(2L, 1, "item-2", "Javaパフォーマンス", "Scott Oaks", "オライリージャパン", 448, 4104, 0)
+            .values(3L, 2, "item-3", "Spring徹底入門", "株式会社NTTデータ", "翔泳社", 752, 4320, 0)
+            .build();
+    private static final Operation INSERT_ISBN =
+        insertInto(ISBN.getName()).columns("book_id", "isbn13")
+            .values(1L, "9784774189093")
+            .values(3L, "9784798142470")
+            .build();
+    private static final Operation INSERT_BOOK_COVER =
+        insertInto(BOOK_COVER.getName()).columns("book_id", "image_url")
+            .values(1L, "http://example.com/covers/1.jpg")
+            .build();
+    private static DbSetupTracker dbSetupTracker = new DbSetupTracker();
+
+    @Before
+    public void setUp() throws Exception {
+        DbSetup dbSetup = new DbSetup(new DataSourceDestination(ds),
+            sequenceOf(DELETE_ALL, INSERT_BOOK_API, INSERT_BOOK, INSERT_ISBN, INSERT_BOOK_COVER));
+        dbSetupTracker.launchIfNecessary(dbSetup);
+    }
+
+    @Test
+    public void findAllWithAssociations() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        Page<Book> books = repository.findAllWithAssociations(new PageRequest(0, 10, new Sort("id")));
+
+        // then
+        assertThat(books.getTotalElements()).isEqualTo(3);
+        List<Book> content = books.getContent();
+        assertThat(content).extracting("title").containsExactly("Java本格入門", "Javaパフォーマンス", "Spring徹底入門");
+        assertThat(content.get(0).getBookApi().getName()).isEqualTo("Google Books API");
+        assertThat(content.get(1).getBookApi()).isSameAs(content.get(0).getBookApi());
+        assertThat(content.get(2).getBookApi().getId()).isEqualTo(2);
+        assertThat(content.get(0).getIsbn().getIsbn13()).isEqualTo("9784774189093");
+        assertThat(content.get(0).getBookCover().getImageUrl()).isEqualTo("http://example.com/covers/1.jpg");
+        assertThat(content.get(1).getIsbn()).isNull();
+        assertThat(content.get(1).getBookCover()).isNull();
+        assertThat(content.get(2).getIsbn().getBookId()).isEqualTo(3L);
+        assertThat(content.get(2).getBookCover()).isNull();
+    }
+
+    @Test
+    public void saveWithStaleVersionFails() throws Exception {
+        // given
+        Book book = repository.findOne(1L);
+        Book stale = repository.findOne(1L);
+        book.setTitle("Java本格入門 第2版");
+        repository.save(book);
+        stale.setPrice(1000);
+        repository.setOptimisticLockRetry(1, 0);
+
+        // when
+        Throwable thrown;
+        try {
+            thrown = catchThrowable(() -> repository.save(stale));
+        } finally {
+            repository.setOptimisticLockRetry(BasicJooqRepository.DEFAULT_LOCK_ATTEMPTS,
+                BasicJooqRepository.DEFAULT_LOCK_BACKOFF_MILLIS);
+        }
+
+        // then
+        assertThat(thrown).isInstanceOf(DataChangedException.class);
+        Book current = repository.findOne(1L);
+        assertThat(current.getTitle()).isEqualTo("Java本格入門 第2版");
+        assertThat(current.getPrice()).isEqualTo(3218);
+        assertThat(current.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void saveWithStaleVersionIsMerged() throws Exception {
+        // given
+        Book book = repository.findOne(1L);
+        Book stale = repository.findOne(1L);
+        book.setTitle("Java本格入門 第2版");
+        repository.save(book);
+        stale.setPrice(1000);
+        repository.setMergeFunction((current, attempted) -> {
+            current.setPrice(attempted.getPrice());
+            return current;
+        });
+
+        // when
+        Book saved;
+        try {
+            saved = repository.save(stale);
+        } finally {
+            repository.setMergeFunction(null);
+        }
+
+        // then
+        assertThat(saved.getVersion()).isEqualTo(2);
+        Book current = repository.findOne(1L);
+        assertThat(current.getTitle()).isEqualTo("Java本格入門 第2版");
+        assertThat(current.getPrice()).isEqualTo(1000);
+        assertThat(current.getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    public void saveWithoutChangesDoesNotUpdate() throws Exception {
+        // given
+        Book book = repository.findOne(1L);
+
+        // when
+        Book saved = repository.save(book);
+
+        // then
+        assertThat(saved.getVersion()).isEqualTo(0);
+        assertThat(repository.findOne(1L).getVersion()).isEqualTo(0);
+    }
+
+    @Test
+    public void patch() throws Exception {
+        // given
+        Map<Field<?>, Object> values = new HashMap<>();
+        values.put(BOOK.PRICE, BOOK.PRICE.add(100));
+        values.put(BOOK.PUBLISHER, "技術評論社 出版部");
+
+        // when
+        int patched = repository.patch(2L, values);
+        int missing = repository.patch(99L, values);
+
+        // then
+        assertThat(patched).isEqualTo(1);
+        assertThat(missing).isEqualTo(0);
+        Book current = repository.findOne(2L);
+        assertThat(current.getPrice()).isEqualTo(4204);
+        assertThat(current.getPublisher()).isEqualTo("技術評論社 出版部");
+        assertThat(current.getTitle()).isEqualTo("Javaパフォーマンス");
+        assertThat(current.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void upsertByUniqueKey() throws Exception {
+        // given
+        Book reimported = new Book(null, 1, "item-2", "Javaパフォーマンス", "Scott Oaks", "オライリージャパン", 448, 3800, null);
+        Book imported = new Book(null, 2, "item-4", "Effective Java", "Joshua Bloch", "丸善出版", 368, 3960, null);
+
+        // when
+        List<Book> saved = Lists.newArrayList(repository.upsert(Arrays.asList(reimported, imported)));
+
+        // then
+        assertThat(saved.get(0).getId()).isEqualTo(2L);
+        assertThat(saved.get(0).getPrice()).isEqualTo(3800);
+        assertThat(saved.get(1).getId()).isNotNull().isNotIn(1L, 2L, 3L);
+        assertThat(saved.get(0).getVersion()).isEqualTo(1);
+        assertThat(saved.get(1).getVersion()).isEqualTo(1);
+        Assertions.assertThat(new Table(ds, BOOK.getName()))
+            .hasNumberOfRows(4);
+    }
+
+    @Test
+    public void saveWithStaleVersionAfterUpsertFails() throws Exception {
+        // given
+        Book stale = repository.findOne(1L);
+        Book reimported = repository.findOne(1L);
+        reimported.setPrice(3000);
+        Book upserted = repository.upsert(reimported);
+        stale.setTitle("Java本格入門 第2版");
+        repository.setOptimisticLockRetry(1, 0);
+
+        // when
+        Throwable thrown;
+        try {
+            thrown = catchThrowable(() -> repository.save(stale));
+        } finally {
+            repository.setOptimisticLockRetry(BasicJooqRepository.DEFAULT_LOCK_ATTEMPTS,
+                BasicJooqRepository.DEFAULT_LOCK_BACKOFF_MILLIS);
+        }
+
+        // then
+        assertThat(upserted.getVersion()).isEqualTo(1);
+        assertThat(thrown).isInstanceOf(DataChangedException.class);
+        Book current = repository.findOne(1L);
+        assertThat(current.getTitle()).isEqualTo("Java本格入門");
+        assertThat(current.getPrice()).isEqualTo(3000);
+        assertThat(current.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void findAllBySpecification() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+        Specification<Book> byBookApi = Specification.equal(BOOK.BOOK_API_ID, 1);
+        Specification<Book> spec = byBookApi.and(Specification.startsWith(BOOK.TITLE, "Java"));
+
+        // when
+        Page<Book> books = repository.findAll(spec, new PageRequest(0, 1, new Sort("id")));
+
+        // then
+        assertThat(books.getTotalElements()).isEqualTo(2);
+        assertThat(books.getContent()).extracting("id").containsExactly(1L);
+        assertThat(repository.count(spec)).isEqualTo(2);
+        assertThat(repository.findAll(byBookApi.or(Specification.equal(BOOK.ID, 3L)))).hasSize(3);
+    }
+
+    @Test
+    public void findAllBySpecificationRejectsUnindexedColumns() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+        Specification<Book> spec = Specification.contains(BOOK.TITLE, "入門");
+        repository.setIndexPolicy(IndexPolicy.REJECT);
+
+        // when
+        Throwable filter;
+        Throwable sort;
+        try {
+            filter = catchThrowable(() -> repository.findAll(spec));
+            sort = catchThrowable(() -> repository.findAll(new Sort("title")));
+        } finally {
+            repository.setIndexPolicy(IndexPolicy.WARN);
+        }
+
+        // then
+        assertThat(filter).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("title");
+        assertThat(sort).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("title");
+        assertThat(repository.findAll(spec)).extracting("id").containsOnly(1L, 3L);
+    }
+
+    @Test
+    public void explain() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        String indexed = repository.explain(Specification.equal(BOOK.BOOK_API_ID, 1), null);
+        String scanned = repository.explain(Specification.contains(BOOK.TITLE, "入門"), new PageRequest(0, 10));
+
+        // then
+        assertThat(indexed).doesNotContain("tableScan");
+        assertThat(scanned).contains("tableScan");
+    }
+
+    @Test
+    public void deleteAllByIdInBatchCascades() throws Exception {
+        // given
+        repository.setBatchSize(2);
+
+        // when
+        int deleted;
+        try {
+            deleted = repository.deleteAllByIdInBatch(Arrays.asList(1L, 3L, 99L));
+        } finally {
+            repository.setBatchSize(BasicJooqRepository.DEFAULT_BATCH_SIZE);
+        }
+
+        // then
+        assertThat(deleted).isEqualTo(2);
+        Assertions.assertThat(new Table(ds, BOOK.getName()))
+            .hasNumberOfRows(1)
+            .column("id").hasValues(2L);
+        Assertions.assertThat(new Table(ds, ISBN.getName())).hasNumberOfRows(0);
+        Assertions.assertThat(new Table(ds, BOOK_COVER.getName())).hasNumberOfRows(0);
+    }
+
+    @Test
+    public void deleteInBatchDoesNotCascade() throws Exception {
+        // given
+        List<Book> books = Arrays.asList(repository.findOne(1L), repository.findOne(3L));
+
+        // when
+        Throwable thrown = catchThrowable(() -> repository.deleteInBatch(books));
+
+        // then
+        assertThat(thrown).isInstanceOf(DataIntegrityViolationException.class);
+        Assertions.assertThat(new Table(ds, BOOK.getName())).hasNumberOfRows(3);
+        Assertions.assertThat(new Table(ds, ISBN.getName())).hasNumberOfRows(2);
+    }
+
+    @Test
+    public void findAllAsInterfaceProjection() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        List<BookTitle> titles = repository.findAll(BookTitle.class, new Sort("id"));
+
+        // then
+        assertThat(titles).extracting(BookTitle::getId).containsExactly(1L, 2L, 3L);
+        assertThat(titles).extracting(BookTitle::getTitle)
+            .containsExactly("Java本格入門", "Javaパフォーマンス", "Spring徹底入門");
+        assertThat(titles.get(0)).isEqualTo(titles.get(0)).isNotEqualTo(titles.get(1));
+    }
+
+    @Test
+    public void findAllAsBeanProjection() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        Page<BookPrice> prices = repository.findAll(BookPrice.class, new PageRequest(0, 2, new Sort("id")));
+
+        // then
+        assertThat(prices.getTotalElements()).isEqualTo(3);
+        assertThat(prices.getContent()).extracting("id", "price").containsExactly(tuple(1L, 3218), tuple(2L, 4104));
+    }
+
+    @Test
+    public void streamAndSeekAsProjection() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        List<Long> streamed;
+        try (Stream<BookTitle> stream = repository.streamAll(BookTitle.class, new Sort(Sort.Direction.DESC, "id"))) {
+            streamed = stream.map(BookTitle::getId).collect(Collectors.toList());
+        }
+        Slice<BookTitle> slice = repository.findAllAfter(BookTitle.class, 1L, new Sort("id"), 1);
+
+        // then
+        assertThat(streamed).containsExactly(3L, 2L, 1L);
+        assertThat(slice.getContent()).extracting(BookTitle::getTitle).containsExactly("Javaパフォーマンス");
+        assertThat(slice.hasNext()).isTrue();
+    }
+
+    @Test
+    public void findAllAsProjectionRejectsUnknownColumns() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        Throwable thrown = catchThrowable(() -> repository.findAll(BookSubtitle.class, (Sort) null));
+
+        // then
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("getSubtitle");
+    }
+
+    /**
+     * Projection of the title.
+     */
+    public interface BookTitle {
+        Long getId();
+
+        String getTitle();
+    }
+
+    /**
+     * Projection of a column which does not exist.
+     */
+    public interface BookSubtitle {
+        String getSubtitle();
+    }
+
+    /**
+     * Projection of the price.
+     */
+    public static class BookPrice {
+        private Long id;
+        private Integer price;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public Integer getPrice() {
+            return price;
+        }
+
+        public void setPrice(Integer price) {
+            this.price = price;
+        }
+    }
+}
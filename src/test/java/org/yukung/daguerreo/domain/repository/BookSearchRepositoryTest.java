@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static com.ninja_squad.dbsetup.Operations.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.yukung.daguerreo.infrastructure.Tables.*;
+
+import com.ninja_squad.dbsetup.DbSetup;
+import com.ninja_squad.dbsetup.DbSetupTracker;
+import com.ninja_squad.dbsetup.destination.DataSourceDestination;
+import com.ninja_squad.dbsetup.operation.Operation;
+import org.jooq.DSLContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.yukung.daguerreo.Application;
+import org.yukung.daguerreo.domain.entity.Book;
+
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * Unit tests for {@link BookSearchRepository}.
+ *
+ * @author yukung
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(Application.class)
+public class BookSearchRepositoryTest {
+
+    @Autowired
+    private BookSearchRepository searchRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private DSLContext dsl;
+
+    // Setup for DB Testing
+    @Autowired
+    private DataSource ds;
+    private static final Operation DELETE_ALL =
+        deleteAllFrom(BOOK_COVER.getName(), ISBN.getName(), BOOK.getName(), BOOK_API.getName());
+    private static final Operation INSERT_BOOK_API =
+        insertInto(BOOK_API.getName()).columns("id", "name", "url")
+            .values(1, "Google Books API", "https://www.googleapis.com/books/v1/volumes")
+            .values(2, "楽天ブックス書籍検索API", "https://app.rakuten.co.jp/services/api/BooksBook/Search/20130522")
+            .build();
+    private static final Operation INSERT_BOOK =
+        insertInto(BOOK.getName())
+            .columns("id", "book_api_id", "item_id", "title", "author", "publisher", "page_num", "price", "version")
+            .values(1L, 1, "item-1", "Java本格入門", "谷本 心", "技術評論社", 432, 3218, 0)
+            .values(2L, 1, "item-2", "Javaパフォーマンス", "Scott Oaks", "オライリージャパン", 448, 4104, 0)
+            .values(3L, 2, "item-3", "Spring徹底入門", "株式会社NTTデータ", "翔泳社", 752, 4320, 0)
+            .build();
+    private static DbSetupTracker dbSetupTracker = new DbSetupTracker();
+
+    @Before
+    public void setUp() throws Exception {
+        DbSetup dbSetup = new DbSetup(new DataSourceDestination(ds),
+            sequenceOf(DELETE_ALL, INSERT_BOOK_API, INSERT_BOOK));
+        dbSetupTracker.launchIfNecessary(dbSetup);
+        // The rows are inserted without the repository.
+        searchRepository.rebuild();
+    }
+
+    @Test
+    public void searchRanksBooks() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        Page<Book> books = searchRepository.search("JAVA", new PageRequest(0, 10));
+
+        // then
+        assertThat(books.getTotalElements()).isEqualTo(2);
+        assertThat(books.getContent()).extracting("id").containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void searchMatchesJapaneseText() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        Page<Book> books = searchRepository.search("入門", new PageRequest(0, 10));
+
+        // then
+        assertThat(books.getContent()).extracting("title").containsExactly("Java本格入門", "Spring徹底入門");
+    }
+
+    @Test
+    public void searchMatchesPrefixes() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        Page<Book> latin = searchRepository.search("spr", new PageRequest(0, 10));
+        Page<Book> japanese = searchRepository.search("パフォ", new PageRequest(0, 10));
+        Page<Book> single = searchRepository.search("泳", new PageRequest(0, 10));
+
+        // then
+        assertThat(latin.getContent()).extracting("id").containsExactly(3L);
+        assertThat(japanese.getContent()).extracting("id").containsExactly(2L);
+        assertThat(single.getContent()).extracting("id").containsExactly(3L);
+    }
+
+    @Test
+    public void searchMatchesAllWords() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        Page<Book> matched = searchRepository.search("java 技術", new PageRequest(0, 10));
+        Page<Book> unmatched = searchRepository.search("java spring", new PageRequest(0, 10));
+        Page<Book> empty = searchRepository.search(" ", new PageRequest(0, 10));
+
+        // then
+        assertThat(matched.getContent()).extracting("id").containsExactly(1L);
+        assertThat(unmatched.getTotalElements()).isEqualTo(0);
+        assertThat(empty.getTotalElements()).isEqualTo(0);
+    }
+
+    @Test
+    public void searchPages() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        Page<Book> books = searchRepository.search("java", new PageRequest(1, 1));
+
+        // then
+        assertThat(books.getTotalElements()).isEqualTo(2);
+        assertThat(books.getContent()).extracting("id").containsExactly(2L);
+    }
+
+    @Test
+    public void rebuildAsyncReplacesIndex() throws Exception {
+        // given
+        dbSetupTracker.skipNextLaunch();
+
+        // when
+        int indexed = searchRepository.rebuildAsync().get(1, TimeUnit.MINUTES);
+        Page<Book> books = searchRepository.search("java", new PageRequest(0, 10));
+
+        // then
+        assertThat(indexed).isEqualTo(3);
+        assertThat(searchRepository.indexedCount()).isEqualTo(3);
+        assertThat(books.getContent()).extracting("id").containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void searchReflectsSavedAndDeletedBooks() throws Exception {
+        // given
+        Book book = new Book(4L, 1, "item-4", "Java入門", "山田 太郎", "技術評論社", 300, 2000, null);
+
+        // when
+        bookRepository.save(book);
+        Page<Book> saved = searchRepository.search("java", new PageRequest(0, 10));
+        bookRepository.delete(2L);
+        Page<Book> deleted = searchRepository.search("java", new PageRequest(0, 10));
+
+        // then
+        assertThat(saved.getContent()).extracting("id").contains(4L);
+        assertThat(saved.getTotalElements()).isEqualTo(3);
+        assertThat(deleted.getContent()).extracting("id").containsOnly(1L, 4L);
+    }
+
+    @Test
+    public void searchSkipsAndDiscountsMissingBooks() throws Exception {
+        // given
+        // The row is deleted without the repository, so that the index still has it.
+        dsl.deleteFrom(BOOK).where(BOOK.ID.equal(2L)).execute();
+
+        // when
+        Page<Book> books = searchRepository.search("java", new PageRequest(0, 10));
+
+        // then
+        assertThat(books.getContent()).extracting("id").containsExactly(1L);
+        assertThat(books.getTotalElements()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.yukung.daguerreo.infrastructure.Tables.*;
+
+import org.jooq.DSLContext;
+import org.jooq.RecordMapper;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultRecordMapper;
+import org.junit.Test;
+import org.yukung.daguerreo.domain.entity.BookApi;
+import org.yukung.daguerreo.infrastructure.tables.records.BookApiRecord;
+
+/**
+ * Unit tests for {@link EntityRecordMapperProvider}.
+ *
+ * @author yukung
+ */
+public class EntityRecordMapperProviderTest {
+
+    private final EntityRecordMapperProvider provider = new EntityRecordMapperProvider();
+    private final DSLContext dsl = DSL.using(SQLDialect.H2);
+
+    @Test
+    public void provideForEntity() throws Exception {
+        // given
+        BookApiRecord record = dsl.newRecord(BOOK_API);
+        record.setId(2);
+        record.setName("Google Books API");
+        record.setUrl("https://www.googleapis.com/books/v1/volumes");
+
+        // when
+        RecordMapper<BookApiRecord, BookApi> mapper = provider.provide(BOOK_API.recordType(), BookApi.class);
+        BookApi bookApi = mapper.map(record);
+
+        // then
+        assertThat(mapper).isExactlyInstanceOf(EntityRecordMapper.class);
+        assertThat(bookApi).isEqualTo(new BookApi(2, "Google Books API", "https://www.googleapis.com/books/v1/volumes"));
+    }
+
+    @Test
+    public void provideForNonBean() throws Exception {
+        // when
+        RecordMapper<BookApiRecord, Integer> mapper = provider.provide(BOOK_API.recordType(), Integer.class);
+
+        // then
+        assertThat(mapper).isExactlyInstanceOf(DefaultRecordMapper.class);
+    }
+
+    @Test
+    public void unmap() throws Exception {
+        // given
+        BookApi bookApi = new BookApi(null, "国立国会図書館サーチAPI", "http://iss.ndl.go.jp/api/sru");
+
+        // when
+        EntityRecordUnmapper<BookApi> unmapper = provider.provideUnmapper(BookApi.class, BOOK_API.fields());
+        BookApiRecord record = unmapper.unmap(bookApi, dsl.newRecord(BOOK_API));
+
+        // then
+        assertThat(record.getId()).isNull();
+        assertThat(record.getName()).isEqualTo("国立国会図書館サーチAPI");
+        assertThat(record.getUrl()).isEqualTo("http://iss.ndl.go.jp/api/sru");
+        assertThat(record.changed(BOOK_API.ID)).isTrue();
+        assertThat(record.changed(BOOK_API.NAME)).isTrue();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link LongFloatMap}.
+ *
+ * @author yukung
+ */
+public class LongFloatMapTest {
+
+    @Test
+    public void putAndGet() throws Exception {
+        // given
+        LongFloatMap map = new LongFloatMap();
+
+        // when
+        map.put(1L, 1.5f);
+        map.put(2L, 2.0f);
+        map.put(1L, 3.0f);
+        map.add(2L, 0.5f);
+        map.add(3L, 1.0f);
+
+        // then
+        assertThat(map.size()).isEqualTo(3);
+        assertThat(map.get(1L)).isEqualTo(3.0f);
+        assertThat(map.get(2L)).isEqualTo(2.5f);
+        assertThat(map.get(3L)).isEqualTo(1.0f);
+        assertThat(map.get(4L)).isEqualTo(0.0f);
+    }
+
+    @Test
+    public void removeKeepsFollowingEntries() throws Exception {
+        // given
+        LongFloatMap map = new LongFloatMap();
+        Map<Long, Float> expected = new HashMap<>();
+        for (long key = 0; key < 1000; key++) {
+            map.put(key * 31, key + 1);
+            expected.put(key * 31, (float) key + 1);
+        }
+
+        // when
+        for (long key = 0; key < 1000; key += 3) {
+            map.remove(key * 31);
+            expected.remove(key * 31);
+        }
+        map.put(62L, 0.0f);
+        expected.remove(62L);
+
+        // then
+        Map<Long, Float> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertThat(actual).isEqualTo(expected);
+        assertThat(map.size()).isEqualTo(expected.size());
+        expected.forEach((key, value) -> assertThat(map.get(key)).isEqualTo(value));
+    }
+
+    @Test
+    public void clear() throws Exception {
+        // given
+        LongFloatMap map = new LongFloatMap(10);
+        map.put(1L, 1.0f);
+
+        // when
+        map.clear();
+
+        // then
+        assertThat(map.size()).isEqualTo(0);
+        assertThat(map.get(1L)).isEqualTo(0.0f);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.repository;
+
+import static com.ninja_squad.dbsetup.Operations.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.yukung.daguerreo.infrastructure.Tables.*;
+
+import com.ninja_squad.dbsetup.DbSetup;
+import com.ninja_squad.dbsetup.destination.DataSourceDestination;
+import com.ninja_squad.dbsetup.destination.DriverManagerDestination;
+import com.ninja_squad.dbsetup.operation.Operation;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.yukung.daguerreo.Application;
+import org.yukung.daguerreo.domain.entity.BookApi;
+
+import java.sql.Timestamp;
+import javax.sql.DataSource;
+
+/**
+ * Unit tests for the routing of the reads to {@link ReadReplica}.
+ * <p>
+ * The replica is another in-memory H2 database which is not replicated, so that the reads can be told apart.
+ * </p>
+ *
+ * @author yukung
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(Application.class)
+@TestPropertySource(properties = {
+    ReadReplicaTest.REPLICA_URL_PROPERTY,
+    "repository.replica.max-lag=60000",
+    "repository.replica.probe-interval=3600000"
+})
+public class ReadReplicaTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=false";
+    static final String REPLICA_URL_PROPERTY = "repository.replica.url=" + REPLICA_URL;
+
+    @Autowired
+    private BookApiRepository repository;
+
+    @Autowired
+    private ReadReplica replica;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Setup for DB Testing
+    @Autowired
+    private DataSource ds;
+    private static final Operation CREATE_REPLICA_TABLES = sequenceOf(
+        sql("CREATE TABLE IF NOT EXISTS book_api (id INT NOT NULL AUTO_INCREMENT, name VARCHAR(128) NOT NULL,"
+            + " url VARCHAR(255) NOT NULL, PRIMARY KEY (id))"),
+        sql("CREATE TABLE IF NOT EXISTS replica_heartbeat (id INT NOT NULL PRIMARY KEY, beat TIMESTAMP NOT NULL)"));
+    private static final Operation DELETE_ALL =
+        deleteAllFrom(BOOK_COVER.getName(), ISBN.getName(), BOOK.getName(), BOOK_API.getName());
+
+    @Before
+    public void setUp() throws Exception {
+        new DbSetup(new DataSourceDestination(ds), sequenceOf(DELETE_ALL, insertBookApi("primary"))).launch();
+        new DbSetup(new DriverManagerDestination(REPLICA_URL, "sa", ""), sequenceOf(
+            CREATE_REPLICA_TABLES,
+            deleteAllFrom("book_api", "replica_heartbeat"),
+            insertBookApi("replica"),
+            heartbeat(System.currentTimeMillis()))).launch();
+        replica.probe();
+    }
+
+    @Test
+    public void findOneReadsFromReplica() throws Exception {
+        // when
+        BookApi bookApi = repository.findOne(1);
+
+        // then
+        assertThat(bookApi.getName()).isEqualTo("replica");
+        assertThat(replica.isAvailable()).isTrue();
+    }
+
+    @Test
+    public void readOnlyTransactionReadsFromReplica() throws Exception {
+        // given
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+
+        // when
+        BookApi bookApi = template.execute(status -> repository.findOne(1));
+
+        // then
+        assertThat(bookApi.getName()).isEqualTo("replica");
+    }
+
+    @Test
+    public void readWriteTransactionReadsFromPrimary() throws Exception {
+        // given
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+
+        // when
+        BookApi bookApi = template.execute(status -> repository.findOne(1));
+
+        // then
+        assertThat(bookApi.getName()).isEqualTo("primary");
+    }
+
+    @Test
+    public void explicitRoutingReadsFromPrimary() throws Exception {
+        // when
+        BookApi bookApi = ReadRouting.primary(() -> repository.findOne(1));
+        long count = ReadRouting.primary(() -> repository.count());
+
+        // then
+        assertThat(bookApi.getName()).isEqualTo("primary");
+        assertThat(count).isEqualTo(1);
+        assertThat(ReadRouting.current()).isNull();
+    }
+
+    @Test
+    public void laggingReplicaFallsBackToPrimary() throws Exception {
+        // given
+        new DbSetup(new DriverManagerDestination(REPLICA_URL, "sa", ""),
+            sequenceOf(deleteAllFrom("replica_heartbeat"), heartbeat(System.currentTimeMillis() - 3600000))).launch();
+        replica.probe();
+
+        // when
+        BookApi bookApi = repository.findOne(1);
+
+        // then
+        assertThat(replica.isAvailable()).isFalse();
+        assertThat(bookApi.getName()).isEqualTo("primary");
+    }
+
+    @Test
+    public void saveWritesToPrimary() throws Exception {
+        // when
+        repository.save(new BookApi(null, "new", "http://example.com/new"));
+
+        // then
+        assertThat(ReadRouting.primary(() -> repository.count())).isEqualTo(2);
+        assertThat(repository.count()).isEqualTo(1);
+    }
+
+    private static Operation insertBookApi(String name) {
+        return insertInto("book_api").columns("id", "name", "url").values(1, name, "http://example.com/" + name).build();
+    }
+
+    private static Operation heartbeat(long millis) {
+        return insertInto("replica_heartbeat").columns("id", "beat").values(1, new Timestamp(millis)).build();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import static org.assertj.core.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+import org.yukung.daguerreo.domain.entity.Book;
+import org.yukung.daguerreo.domain.entity.BookApi;
+import org.yukung.daguerreo.metrics.RepositoryMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Unit tests for {@link BookApiClient} against a local mock server.
+ *
+ * @author yukung
+ */
+public class BookApiClientTest {
+
+    private HttpServer server;
+    private List<String> requests;
+    private AtomicInteger throttled;
+    private AtomicInteger active;
+    private AtomicInteger maxActive;
+    private RepositoryMetrics metrics;
+    private BookApiClientSettings settings;
+    private BookApiClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        requests = Collections.synchronizedList(new ArrayList<>());
+        throttled = new AtomicInteger();
+        active = new AtomicInteger();
+        maxActive = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/books/v1/volumes", exchange -> {
+            requests.add(exchange.getRequestURI().toString());
+            if (throttled.getAndDecrement() > 0) {
+                exchange.getResponseHeaders().set("Retry-After", "0");
+                exchange.sendResponseHeaders(429, -1);
+                exchange.close();
+                return;
+            }
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+                respond(exchange, "google-books-0.json");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+        server.createContext("/onca/xml", exchange -> {
+            requests.add(exchange.getRequestURI().toString());
+            respond(exchange, "amazon.xml");
+        });
+        server.start();
+        metrics = new RepositoryMetrics(true);
+        settings = new BookApiClientSettings();
+        settings.setRateLimit(1000);
+        settings.setBackoffMillis(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void search() throws Exception {
+        // given
+        client = new BookApiClient(api(1, "/books/v1/volumes?key=stub"), settings, metrics);
+
+        // when
+        List<Book> books = client.search("Java", 1);
+
+        // then
+        assertThat(books).extracting("itemId").containsExactly("zyTCAlFPjgYC", "b2pTCwAAQBAJ");
+        assertThat(requests).containsExactly("/books/v1/volumes?key=stub&q=Java&startIndex=40&maxResults=40");
+    }
+
+    @Test
+    public void searchRetriesThrottledRequests() throws Exception {
+        // given
+        client = new BookApiClient(api(1, "/books/v1/volumes"), settings, metrics);
+        throttled.set(2);
+
+        // when
+        List<Book> books = client.search("Java", 0);
+
+        // then
+        assertThat(books).hasSize(2);
+        assertThat(requests).hasSize(3);
+        assertThat(metrics.operation("bookapi.1", "search").snapshot()).containsEntry("errors", 2L);
+    }
+
+    @Test
+    public void searchFailsAfterMaxAttempts() throws Exception {
+        // given
+        client = new BookApiClient(api(1, "/books/v1/volumes"), settings, metrics);
+        throttled.set(Integer.MAX_VALUE);
+
+        // when
+        Throwable thrown = catchThrowable(() -> client.search("Java", 0));
+
+        // then
+        assertThat(thrown).isInstanceOf(IOException.class).hasMessageStartingWith("HTTP 429");
+        assertThat(requests).hasSize(settings.getMaxAttempts());
+    }
+
+    @Test
+    public void searchLimitsConcurrency() throws Exception {
+        // given
+        settings.setMaxConcurrency(2);
+        client = new BookApiClient(api(1, "/books/v1/volumes"), settings, metrics);
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+
+        // when
+        List<CompletableFuture<List<Book>>> futures = IntStream.range(0, 8)
+            .mapToObj(page -> CompletableFuture.supplyAsync(() -> {
+                try {
+                    return client.search("Java", page);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, callers))
+            .collect(Collectors.toList());
+        futures.forEach(CompletableFuture::join);
+        callers.shutdown();
+
+        // then
+        assertThat(requests).hasSize(8);
+        assertThat(maxActive.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void searchLimitsRate() throws Exception {
+        // given
+        settings.setRateLimit(10);
+        client = new BookApiClient(api(2, "/onca/xml"), settings, metrics);
+
+        // when
+        long start = System.nanoTime();
+        for (int page = 0; page < 6; page++) {
+            client.search("Java", page);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // then
+        assertThat(elapsedMillis).isGreaterThanOrEqualTo(450);
+    }
+
+    @Test
+    public void lookupBatchesItemIds() throws Exception {
+        // given
+        client = new BookApiClient(api(2, "/onca/xml"), settings, metrics);
+        List<String> itemIds = IntStream.range(0, 12).mapToObj(i -> "ASIN" + i).collect(Collectors.toList());
+
+        // when
+        List<Book> books = client.lookup(itemIds);
+
+        // then
+        assertThat(requests).hasSize(2);
+        assertThat(requests.stream().anyMatch(request -> request.endsWith("ItemId=ASIN10,ASIN11"))).isTrue();
+        assertThat(books).hasSize(4);
+    }
+
+    private BookApi api(int id, String path) {
+        return new BookApi(id, "stub", "http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    private static void respond(HttpExchange exchange, String resource) throws IOException {
+        try (InputStream in = BookApiClientTest.class.getResourceAsStream("/bookapi/" + resource)) {
+            byte[] body = StreamUtils.copyToByteArray(in);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
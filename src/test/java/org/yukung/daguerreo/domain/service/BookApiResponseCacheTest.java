@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.yukung.daguerreo.infrastructure.Tables.*;
+
+import org.jooq.DSLContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.yukung.daguerreo.Application;
+import org.yukung.daguerreo.domain.entity.BookApi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link BookApiResponseCache}.
+ *
+ * @author yukung
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(Application.class)
+public class BookApiResponseCacheTest {
+
+    private static final String QUERY = "/books/v1/volumes?q=isbn:9784774189093";
+
+    @Autowired
+    private DSLContext dsl;
+
+    private final BookApi bookApi = new BookApi(1, "Google Books API", "https://www.googleapis.com/books/v1/volumes");
+    private AtomicInteger loads;
+
+    @Before
+    public void setUp() throws Exception {
+        dsl.deleteFrom(BOOK_API_RESPONSE).execute();
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void getCachesInMemory() throws Exception {
+        // given
+        BookApiResponseCache cache = newCache(60000, 0);
+
+        // when
+        cache.get(bookApi, QUERY, loader("v1"));
+        byte[] body = cache.get(bookApi, QUERY, loader("v2"));
+
+        // then
+        assertThat(new String(body, StandardCharsets.UTF_8)).isEqualTo("v1");
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.hitRatio(bookApi.getId())).isEqualTo(0.5);
+    }
+
+    @Test
+    public void getReadsTableAfterRestart() throws Exception {
+        // given
+        newCache(60000, 0).get(bookApi, QUERY, loader("v1"));
+        BookApiResponseCache restarted = newCache(60000, 0);
+
+        // when
+        byte[] body = restarted.get(bookApi, QUERY, loader("v2"));
+
+        // then
+        assertThat(new String(body, StandardCharsets.UTF_8)).isEqualTo("v1");
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(dsl.fetchCount(BOOK_API_RESPONSE)).isEqualTo(1);
+    }
+
+    @Test
+    public void getReturnsStaleResponseWhileRevalidating() throws Exception {
+        // given
+        BookApiResponseCache cache = newCache(0, 60000);
+        cache.get(bookApi, QUERY, loader("v1"));
+        Thread.sleep(5);
+
+        // when
+        byte[] stale = cache.get(bookApi, QUERY, loader("v2"));
+
+        // then
+        assertThat(new String(stale, StandardCharsets.UTF_8)).isEqualTo("v1");
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(dsl.select(BOOK_API_RESPONSE.BODY).from(BOOK_API_RESPONSE).fetchOne(BOOK_API_RESPONSE.BODY))
+            .isEqualTo("v2".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void getLoadsExpiredResponse() throws Exception {
+        // given
+        BookApiResponseCache cache = newCache(0, 0);
+        cache.get(bookApi, QUERY, loader("v1"));
+        Thread.sleep(5);
+
+        // when
+        byte[] body = cache.get(bookApi, QUERY, loader("v2"));
+
+        // then
+        assertThat(new String(body, StandardCharsets.UTF_8)).isEqualTo("v2");
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(cache.hitRatio(bookApi.getId())).isEqualTo(0.0);
+    }
+
+    private BookApiResponseCache newCache(long ttlMillis, long staleMillis) {
+        // Revalidates synchronously, so that the stale response is replaced when get() returns.
+        return new BookApiResponseCache(dsl, ttlMillis, staleMillis, TimeUnit.MILLISECONDS, 1024 * 1024, Runnable::run);
+    }
+
+    private BookApiResponseCache.Loader loader(String body) {
+        return () -> {
+            loads.incrementAndGet();
+            return body.getBytes(StandardCharsets.UTF_8);
+        };
+    }
+}
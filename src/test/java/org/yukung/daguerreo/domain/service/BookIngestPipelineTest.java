@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.domain.service;
+
+import static com.ninja_squad.dbsetup.Operations.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.yukung.daguerreo.infrastructure.Tables.*;
+
+import com.ninja_squad.dbsetup.DbSetup;
+import com.ninja_squad.dbsetup.destination.DataSourceDestination;
+import com.ninja_squad.dbsetup.operation.Operation;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.assertj.db.api.Assertions;
+import org.assertj.db.type.Request;
+import org.assertj.db.type.Table;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.util.StreamUtils;
+import org.yukung.daguerreo.Application;
+import org.yukung.daguerreo.domain.entity.BookApi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import javax.sql.DataSource;
+
+/**
+ * Unit tests for {@link BookIngestPipeline}.
+ * <p>
+ * The book APIs are stubbed by a local HTTP server which serves the recorded responses in {@code /bookapi}.
+ * </p>
+ *
+ * @author yukung
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(Application.class)
+public class BookIngestPipelineTest {
+
+    private static HttpServer server;
+
+    @Autowired
+    private BookIngestPipeline pipeline;
+
+    @Autowired
+    private BookApiResponseCache cache;
+
+    private BookApi google;
+    private BookApi amazon;
+
+    // Setup for DB Testing
+    @Autowired
+    private DataSource ds;
+    private static final Operation DELETE_ALL =
+        deleteAllFrom(BOOK_COVER.getName(), ISBN.getName(), BOOK.getName(), BOOK_API.getName());
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/books/v1/volumes", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            String startIndex = query.replaceAll(".*startIndex=(\\d+).*", "$1");
+            respond(exchange, "google-books-" + startIndex + ".json");
+        });
+        server.createContext("/onca/xml", exchange -> respond(exchange, "amazon.xml"));
+        server.start();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        server.stop(0);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        String base = "http://localhost:" + server.getAddress().getPort();
+        google = new BookApi(1, "Google Books API", base + "/books/v1/volumes");
+        amazon = new BookApi(2, "Amazon Product Advertising API", base + "/onca/xml?AWSAccessKeyId=stub");
+        Operation insertBookApi = insertInto(BOOK_API.getName()).columns("id", "name", "url")
+            .values(google.getId(), google.getName(), google.getUrl())
+            .values(amazon.getId(), amazon.getName(), amazon.getUrl())
+            .build();
+        new DbSetup(new DataSourceDestination(ds), sequenceOf(DELETE_ALL, insertBookApi)).launch();
+        cache.invalidateAll();
+        // Small batches and queue, so that the writers fall behind the parsers.
+        pipeline.setBatchSize(1);
+        pipeline.setQueueCapacity(1);
+    }
+
+    @Test
+    public void ingestGoogleBooks() throws Exception {
+        // when
+        IngestResult result = pipeline.ingest(google, "Java", 2);
+
+        // then
+        assertThat(result).isEqualTo(new IngestResult(2, 5, 1, 1, 3));
+        Assertions.assertThat(new Request(ds,
+            "SELECT item_id, title, author, publisher, page_num, price FROM book ORDER BY item_id"))
+            .hasNumberOfRows(3)
+            .row().hasValues("ZmsqCwAAQBAJ", "Spring徹底入門", "株式会社NTTデータ", "翔泳社", 752, 4320)
+            .row().hasValues("b2pTCwAAQBAJ", "Javaパフォーマンス", "Scott Oaks", "オライリージャパン", 448, 0)
+            .row().hasValues("zyTCAlFPjgYC", "Java本格入門", "谷本 心, 阪本 雄一郎", "技術評論社", 432, 3218);
+        Assertions.assertThat(new Request(ds,
+            "SELECT i.isbn13 FROM isbn i JOIN book b ON b.id = i.book_id ORDER BY b.item_id"))
+            .column().hasValues("9784798142470", "9784873117188", "9784774189093");
+        Assertions.assertThat(new Table(ds, BOOK_COVER.getName()))
+            .column("image_url").hasValues("http://books.google.com/books/content?id=zyTCAlFPjgYC");
+    }
+
+    @Test
+    public void ingestAmazon() throws Exception {
+        // when
+        IngestResult result = pipeline.ingest(amazon, "Java", 1);
+
+        // then
+        assertThat(result.getWritten()).isEqualTo(2);
+        Assertions.assertThat(new Request(ds, "SELECT item_id, title, author, price FROM book ORDER BY item_id"))
+            .row().hasValues("4774189091", "Java本格入門", "谷本 心, 阪本 雄一郎", 3218)
+            .row().hasValues("4798142476", "Spring徹底入門 & Spring Boot", "株式会社NTTデータ", 0);
+        Assertions.assertThat(new Table(ds, ISBN.getName())).hasNumberOfRows(2);
+        Assertions.assertThat(new Table(ds, BOOK_COVER.getName()))
+            .column("image_url").hasValues("http://ecx.images-amazon.com/images/I/51cover.jpg");
+    }
+
+    @Test
+    public void ingestAgainUpdatesBooks() throws Exception {
+        // given
+        pipeline.ingest(google, "Java", 2);
+
+        // when
+        IngestResult result = pipeline.ingest(google, "Java", 2);
+
+        // then
+        assertThat(result.getWritten()).isEqualTo(3);
+        Assertions.assertThat(new Table(ds, BOOK.getName())).hasNumberOfRows(3);
+        Assertions.assertThat(new Table(ds, ISBN.getName())).hasNumberOfRows(3);
+    }
+
+    @Test
+    public void ingestFailsOnMissingPage() throws Exception {
+        // when
+        Throwable thrown = catchThrowable(() -> pipeline.ingest(google, "Java", 3));
+
+        // then
+        assertThat(thrown).isInstanceOf(UncheckedIOException.class).hasMessageContaining("HTTP 404");
+    }
+
+    private static void respond(HttpExchange exchange, String resource) throws IOException {
+        try (InputStream in = BookIngestPipelineTest.class.getResourceAsStream("/bookapi/" + resource)) {
+            if (in == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] body = StreamUtils.copyToByteArray(in);
+            exchange.getResponseHeaders().set("Content-Type", resource.endsWith(".xml")
+                ? "application/xml; charset=UTF-8" : "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.metrics;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Unit tests for {@link Histogram}.
+ *
+ * @author yukung
+ */
+public class HistogramTest {
+
+    @Test
+    public void bucketBoundaries() throws Exception {
+        assertThat(Histogram.index(7)).isEqualTo(7);
+        assertThat(Histogram.upperBound(Histogram.index(7))).isEqualTo(7);
+        assertThat(Histogram.upperBound(Histogram.index(8))).isEqualTo(8);
+        assertThat(Histogram.upperBound(Histogram.index(16))).isEqualTo(17);
+        assertThat(Histogram.upperBound(Histogram.index(1000))).isBetween(1000L, 1125L);
+        assertThat(Histogram.index(Long.MAX_VALUE)).isLessThan(488);
+    }
+
+    @Test
+    public void percentiles() throws Exception {
+        // given
+        Histogram histogram = new Histogram();
+
+        // when
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        // then
+        assertThat(histogram.count()).isEqualTo(1000);
+        assertThat(histogram.max()).isEqualTo(1000);
+        assertThat(histogram.percentile(0.5)).isBetween(500L, 563L);
+        assertThat(histogram.percentile(0.99)).isBetween(990L, 1000L);
+    }
+
+    @Test
+    public void snapshotOfEmpty() throws Exception {
+        // when
+        Map<String, Object> snapshot = new Histogram().snapshot(1.0);
+
+        // then
+        assertThat(snapshot)
+            .containsEntry("count", 0L)
+            .containsEntry("mean", 0.0)
+            .containsEntry("p99", 0.0);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Yusuke Ikeda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.yukung.daguerreo.metrics;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConfiguration;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link StatementMetricsListener}.
+ *
+ * @author yukung
+ */
+public class StatementMetricsListenerTest {
+
+    private final RepositoryMetrics metrics = new RepositoryMetrics(true);
+
+    private final StatementMetricsListener listener = new StatementMetricsListener(metrics);
+
+    private Connection connection;
+
+    private DSLContext dsl;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+        dsl = DSL.using(new DefaultConfiguration()
+                .set(connection)
+                .set(SQLDialect.H2)
+                .set(new DefaultExecuteListenerProvider(listener)));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void statementsAreTaggedBySql() throws Exception {
+        // when
+        dsl.fetch("select 1");
+        dsl.fetch("select 1");
+        dsl.fetch("select 2");
+
+        // then
+        assertThat(listener.tag("select 1")).startsWith("sql:select 1 #").isNotEqualTo(listener.tag("select 2"));
+        assertThat(metrics.operation(listener.tag("select 1"), "execute.READ").snapshot().get("errors"))
+                .isEqualTo(0L);
+        assertThat(metrics.snapshot()).containsKeys(listener.tag("select 1"), listener.tag("select 2"));
+    }
+
+    @Test
+    public void lazyFetchCountsRows() throws Exception {
+        // given
+        String sql = "select x from system_range(1, 5)";
+
+        // when
+        try (Cursor<Record> cursor = dsl.fetchLazy(sql)) {
+            cursor.forEach(record -> {
+            });
+        }
+
+        // then
+        Map<?, ?> rows = (Map<?, ?>) metrics.operation(listener.tag(sql), "fetch.READ").snapshot().get("rows");
+        assertThat(rows.get("count")).isEqualTo(1L);
+        assertThat(rows.get("max")).isEqualTo(5.0);
+    }
+
+    @Test
+    public void statementsAreBounded() throws Exception {
+        // when
+        for (int i = 0; i < StatementMetricsListener.MAX_STATEMENTS; i++) {
+            listener.tag("select " + i);
+        }
+
+        // then
+        assertThat(listener.tag("select 0")).isNotEqualTo("sql:other");
+        assertThat(listener.tag("select -1")).isEqualTo("sql:other");
+        assertThat(listener.tag(null)).isEqualTo("sql:other");
+    }
+
+    @Test
+    public void failedStatementIsCounted() throws Exception {
+        // when
+        Throwable thrown = catchThrowable(() -> dsl.fetch("select * from no_such_table"));
+
+        // then
+        assertThat(thrown).isInstanceOf(DataAccessException.class);
+        assertThat(metrics.operation(listener.tag("select * from no_such_table"), "execute.READ").snapshot()
+                .get("errors")).isEqualTo(1L);
+    }
+}